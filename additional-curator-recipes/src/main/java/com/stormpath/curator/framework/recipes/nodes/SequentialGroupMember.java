@@ -2,19 +2,30 @@ package com.stormpath.curator.framework.recipes.nodes;
 
 import com.google.common.base.Throwables;
 import org.apache.curator.framework.CuratorFramework;
-import org.apache.curator.framework.recipes.locks.InterProcessMutex;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.PathChildrenCache;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
 import org.apache.curator.framework.recipes.nodes.PersistentNode;
 import org.apache.curator.utils.CloseableUtils;
 import org.apache.curator.utils.ThreadUtils;
 import org.apache.curator.utils.ZKPaths;
 import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
 import org.apache.zookeeper.data.Stat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.Assert;
 
 import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class SequentialGroupMember implements Closeable {
 
@@ -23,40 +34,157 @@ public class SequentialGroupMember implements Closeable {
     private final CuratorFramework client;
     private final int startingId;
     private final String membersBasePath;
-    private final String locksBasePath;
     private final byte[] payload;
 
+    private long claimTimeoutMillis = 30000;
+    private long backoffBaseMillis = 10;
+    private long backoffMaxMillis = 1000;
+    private List<Integer> preferredIds = Collections.emptyList();
+
+    private final List<MembershipListener> listeners = new CopyOnWriteArrayList<>();
+
     private PersistentNode pen;
+    private PathChildrenCache membersCache;
     private int id = -1;
+    private long claimMillis = -1;
+    private int claimAttempts = 0;
 
     /**
      * @param client          client
      * @param membersBasePath the path to use for membership
      * @param payload         the payload to write in our member node
      */
-    public SequentialGroupMember(CuratorFramework client, String membersBasePath, String locksBasePath, byte[] payload) {
-        this(client, membersBasePath, locksBasePath, 0, payload);
+    public SequentialGroupMember(CuratorFramework client, String membersBasePath, byte[] payload) {
+        this(client, membersBasePath, 0, payload);
     }
 
     /**
      * @param client          client
      * @param membersBasePath the path to use for membership
+     * @param startingId      the lowest id to claim
      * @param payload         the payload to write in our member node
      */
-    public SequentialGroupMember(CuratorFramework client, String membersBasePath, String locksBasePath, int startingId, byte[] payload) {
+    public SequentialGroupMember(CuratorFramework client, String membersBasePath, int startingId, byte[] payload) {
         Assert.isTrue(startingId >= 0, "startingId must be greater than or equal to zero.");
         this.startingId = startingId;
         this.membersBasePath = membersBasePath;
-        this.locksBasePath = locksBasePath;
         this.client = client;
         this.payload = payload;
     }
 
+    /**
+     * @deprecated ids are claimed without locks, use {@link #SequentialGroupMember(CuratorFramework, String, byte[])}
+     */
+    @Deprecated
+    public SequentialGroupMember(CuratorFramework client, String membersBasePath, String locksBasePath, byte[] payload) {
+        this(client, membersBasePath, 0, payload);
+    }
+
+    /**
+     * @deprecated ids are claimed without locks, use
+     * {@link #SequentialGroupMember(CuratorFramework, String, int, byte[])}
+     */
+    @Deprecated
+    public SequentialGroupMember(CuratorFramework client, String membersBasePath, String locksBasePath, int startingId, byte[] payload) {
+        this(client, membersBasePath, startingId, payload);
+    }
+
     public int getId() {
         Assert.isTrue(this.id != -1, "member id not yet acquired.  call start() first.");
         return this.id;
     }
 
+    public long getClaimTimeoutMillis() {
+        return claimTimeoutMillis;
+    }
+
+    /**
+     * Sets how long {@link #start()} may take to claim an id, including retries, before it fails.
+     *
+     * @param claimTimeoutMillis the maximum time to claim an id
+     */
+    public void setClaimTimeoutMillis(long claimTimeoutMillis) {
+        Assert.isTrue(claimTimeoutMillis > 0, "claimTimeoutMillis must be greater than zero.");
+        this.claimTimeoutMillis = claimTimeoutMillis;
+    }
+
+    public long getBackoffBaseMillis() {
+        return backoffBaseMillis;
+    }
+
+    public void setBackoffBaseMillis(long backoffBaseMillis) {
+        Assert.isTrue(backoffBaseMillis > 0, "backoffBaseMillis must be greater than zero.");
+        this.backoffBaseMillis = backoffBaseMillis;
+    }
+
+    public long getBackoffMaxMillis() {
+        return backoffMaxMillis;
+    }
+
+    public void setBackoffMaxMillis(long backoffMaxMillis) {
+        Assert.isTrue(backoffMaxMillis > 0, "backoffMaxMillis must be greater than zero.");
+        this.backoffMaxMillis = backoffMaxMillis;
+    }
+
+    public List<Integer> getPreferredIds() {
+        return preferredIds;
+    }
+
+    /**
+     * Sets the ids to claim before falling back to the lowest free id, e.g. the ids this host had before a restart.
+     * The first one that isn't taken by another member is claimed.
+     *
+     * @param preferredIds the ids to try first, in order of preference
+     */
+    public void setPreferredIds(List<Integer> preferredIds) {
+        Assert.notNull(preferredIds, "preferredIds cannot be null.");
+        this.preferredIds = new ArrayList<>(preferredIds);
+    }
+
+    /**
+     * @return how long {@link #start()} took to claim the id, or -1 if it hasn't been claimed.
+     */
+    public long getClaimMillis() {
+        return claimMillis;
+    }
+
+    /**
+     * @return the number of ids {@link #start()} tried to claim (1 unless other members claimed the same ids first).
+     */
+    public int getClaimAttempts() {
+        return claimAttempts;
+    }
+
+    /**
+     * @return the ids of all current members (including this one), sorted ascending
+     */
+    public List<Integer> getCurrentMemberIds() {
+        Assert.notNull(membersCache, "members are not yet cached.  call start() first.");
+        List<Integer> ids = new ArrayList<>();
+        for (ChildData child : membersCache.getCurrentData()) {
+            Integer id = parseId(ZKPaths.getNodeFromPath(child.getPath()));
+            if (id != null) {
+                ids.add(id);
+            }
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+
+    /**
+     * Adds a listener that is notified (on the cache's event thread) whenever a member joins or leaves the group.
+     *
+     * @param listener the listener to add
+     */
+    public void addListener(MembershipListener listener) {
+        Assert.notNull(listener, "listener cannot be null.");
+        listeners.add(listener);
+    }
+
+    public void removeListener(MembershipListener listener) {
+        listeners.remove(listener);
+    }
+
     /**
      * Start the group membership. Register thisId as a member and begin
      * caching all members
@@ -72,49 +200,169 @@ public class SequentialGroupMember implements Closeable {
 
     protected void doStart() throws Exception {
 
+        long start = System.currentTimeMillis();
+        long deadline = start + claimTimeoutMillis;
+        int failures = 0;
+
+        //list the current members once and try to claim a preferred or the lowest free id with a conditional create.
+        //The create itself is the arbiter - no locks needed - and the members are only listed again if another member
+        //claimed the same id first:
+        Set<Integer> taken = null;
+        String memberPath = null;
+        String unconfirmedPath = null; //a create that may have succeeded even though it failed
         int i = startingId;
 
-        while (this.id == -1) {
+        while (memberPath == null) {
 
-            String lockPath = ZKPaths.makePath(locksBasePath, String.valueOf(i));
-            String memberPath = ZKPaths.makePath(membersBasePath, String.valueOf(i));
+            if (System.currentTimeMillis() >= deadline) {
+                String msg = "Unable to claim a member id under " + membersBasePath + " within " +
+                    claimTimeoutMillis + " ms after trying " + claimAttempts + " ids.";
+                throw new TimeoutException(msg);
+            }
 
-            log.trace("Acquiring mutex for member {} via lock path {}", i, lockPath);
+            String path = null;
+            try {
+                //Curator retries a create whose response was lost, so our own node may already exist - adopt it
+                //instead of leaving it behind as a member nobody runs:
+                if (unconfirmedPath != null) {
+                    if (isOwnNode(unconfirmedPath)) {
+                        memberPath = unconfirmedPath;
+                        continue;
+                    }
+                    unconfirmedPath = null;
+                }
 
-            InterProcessMutex mutex = new InterProcessMutex(this.client, lockPath);
-            mutex.acquire();
+                if (taken == null) {
+                    taken = getMemberIds();
+                }
+                i = selectId(taken);
 
-            log.debug("Acquired mutex for member {} via lock path {}", i, lockPath);
+                claimAttempts++;
+                path = ZKPaths.makePath(membersBasePath, String.valueOf(i));
+                createMemberNode(path);
+                memberPath = path;
 
-            try {
+            } catch (KeeperException.NodeExistsException e) {
+                log.debug("Container id {} is taken, retrying", i);
+                unconfirmedPath = path;
+                taken = null;
+                backoff(++failures, deadline);
+            } catch (KeeperException.ConnectionLossException | KeeperException.OperationTimeoutException e) {
+                log.warn("Unable to claim container id {}, retrying: {}", i, e.getMessage());
+                if (path != null) {
+                    unconfirmedPath = path;
+                }
+                taken = null;
+                backoff(++failures, deadline);
+            }
+        }
 
-                Stat stat = client.checkExists().creatingParentContainersIfNeeded().forPath(memberPath);
+        try {
+            //we own the node now - PersistentNode keeps it (and re-creates it if our session is lost):
+            pen = new PersistentNode(client, CreateMode.EPHEMERAL, false, memberPath, payload);
+            pen.start();
+            long remaining = Math.max(deadline - System.currentTimeMillis(), 1);
+            if (!pen.waitForInitialCreate(remaining, TimeUnit.MILLISECONDS)) {
+                CloseableUtils.closeQuietly(pen);
+                throw new TimeoutException("Member node " + memberPath + " was not created within " +
+                    claimTimeoutMillis + " ms.");
+            }
+        } catch (InterruptedException e) {
+            CloseableUtils.closeQuietly(pen);
+            throw e;
+        }
 
-                if (stat == null) {
+        this.id = i;
+        this.claimMillis = System.currentTimeMillis() - start;
+        log.info("Claimed container id {} via member path {} in {} ms after trying {} ids", i, memberPath,
+            claimMillis, claimAttempts);
 
-                    log.debug("Claiming container id {} via member path {}", i, memberPath);
+        startMembersCache();
+    }
 
+    /**
+     * Creates this member's ephemeral node, failing with a {@link KeeperException.NodeExistsException} if another
+     * member claimed its id first.
+     *
+     * @param path the path of the member node
+     */
+    protected void createMemberNode(String path) throws Exception {
+        client.create().creatingParentContainersIfNeeded().withMode(CreateMode.EPHEMERAL).forPath(path, payload);
+    }
+
+    private boolean isOwnNode(String path) throws Exception {
+        Stat stat = client.checkExists().forPath(path);
+        return stat != null && stat.getEphemeralOwner() == client.getZookeeperClient().getZooKeeper().getSessionId();
+    }
+
+    private void startMembersCache() throws Exception {
+        membersCache = new PathChildrenCache(client, membersBasePath, false);
+        membersCache.getListenable().addListener((c, event) -> {
+            PathChildrenCacheEvent.Type type = event.getType();
+            if (type == PathChildrenCacheEvent.Type.CHILD_ADDED || type == PathChildrenCacheEvent.Type.CHILD_REMOVED) {
+                List<Integer> ids = getCurrentMemberIds();
+                log.debug("Members of {} changed to {}", membersBasePath, ids);
+                for (MembershipListener listener : listeners) {
                     try {
-                        //no peer has this node yet, grab it:
-                        pen = new PersistentNode(client, CreateMode.EPHEMERAL, false, memberPath, payload);
-                        pen.start();
-                        pen.waitForInitialCreate(30000, TimeUnit.SECONDS);
-                        this.id = i;
-                        log.info("Claimed container id {} via member path {}", i, memberPath);
-                        return;
-                    } catch (InterruptedException e) {
-                        CloseableUtils.closeQuietly(pen);
-                        ThreadUtils.checkInterrupted(e);
-                        Throwables.propagate(e);
+                        listener.membersChanged(ids);
+                    } catch (Exception e) {
+                        log.warn("Membership listener failed: " + e.getMessage(), e);
                     }
                 }
+            }
+        });
+        //loads the current members before start() returns, so only later changes are reported:
+        membersCache.start(PathChildrenCache.StartMode.BUILD_INITIAL_CACHE);
+    }
+
+    private int selectId(Set<Integer> taken) {
+        for (Integer id : preferredIds) {
+            if (id >= startingId && !taken.contains(id)) {
+                return id;
+            }
+        }
+        int id = startingId;
+        while (taken.contains(id)) {
+            id++;
+        }
+        return id;
+    }
+
+    /**
+     * Sleeps for a random time of up to {@code backoffBaseMillis * 2^(failures - 1)} (at most
+     * {@code backoffMaxMillis}) so that members that collided don't retry in lockstep.
+     */
+    private void backoff(int failures, long deadline) throws InterruptedException {
+        long max = Math.min(backoffBaseMillis << Math.min(failures - 1, 20), backoffMaxMillis);
+        long sleep = Math.min(ThreadLocalRandom.current().nextLong(max + 1), deadline - System.currentTimeMillis());
+        if (sleep > 0) {
+            Thread.sleep(sleep);
+        }
+    }
 
-            } finally {
-                mutex.release();
-                log.debug("Released mutex for member {} via lock path {}", i, lockPath);
+    protected Set<Integer> getMemberIds() throws Exception {
+        List<String> children;
+        try {
+            children = client.getChildren().forPath(membersBasePath);
+        } catch (KeeperException.NoNodeException e) { //first member
+            return new HashSet<>();
+        }
+        Set<Integer> ids = new HashSet<>(children.size());
+        for (String child : children) {
+            Integer id = parseId(child);
+            if (id != null) {
+                ids.add(id);
             }
+        }
+        return ids;
+    }
 
-            i++;
+    private static Integer parseId(String child) {
+        try {
+            return Integer.parseInt(child);
+        } catch (NumberFormatException e) {
+            log.debug("Ignoring unexpected member node {}", child);
+            return null;
         }
     }
 
@@ -137,6 +385,15 @@ public class SequentialGroupMember implements Closeable {
      */
     @Override
     public void close() {
+        CloseableUtils.closeQuietly(membersCache);
         CloseableUtils.closeQuietly(pen);
     }
+
+    public interface MembershipListener {
+
+        /**
+         * @param memberIds the ids of all current members, sorted ascending
+         */
+        void membersChanged(List<Integer> memberIds);
+    }
 }
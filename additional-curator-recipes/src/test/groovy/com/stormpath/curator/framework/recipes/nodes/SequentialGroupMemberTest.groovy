@@ -1,28 +1,154 @@
 package com.stormpath.curator.framework.recipes.nodes
 
+import org.apache.curator.framework.CuratorFramework
+import org.apache.curator.framework.CuratorFrameworkFactory
+import org.apache.curator.retry.RetryOneTime
+import org.apache.curator.test.TestingServer
+import org.apache.zookeeper.KeeperException
+import org.junit.After
+import org.junit.Before
 import org.junit.Test
 
-import static org.junit.Assert.*;
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.TimeUnit
+
+import static org.junit.Assert.*
 
 class SequentialGroupMemberTest {
 
-    /*
+    static final String MEMBERS_PATH = '/samza/jobs/foo/containers'
+
+    TestingServer server
+    List<CuratorFramework> clients = []
+
+    @Before
+    void setUp() {
+        server = new TestingServer()
+    }
+
+    @After
+    void tearDown() {
+        clients*.close()
+        server?.close()
+    }
+
+    CuratorFramework newClient() {
+        def client = CuratorFrameworkFactory.newClient(server.connectString, new RetryOneTime(100))
+        client.start()
+        clients << client
+        client
+    }
+
     @Test
-    void testIdFromPathWithZero() {
-        String path = '/samza/jobs/foo/containers/_c_f1b351a4-fc30-44a7-8072-c3bc4635c09c-containers0000000000'
-        assertEquals 0, SequentialGroupMember.idFromPath(path);
+    void testConcurrentMembersClaimDistinctIds() {
+
+        def executor = Executors.newFixedThreadPool(20)
+        def members = (0..<20).collect { newClient() }.collect { client ->
+            executor.submit({
+                def member = new SequentialGroupMember(client, MEMBERS_PATH, new byte[0])
+                member.start()
+                member
+            } as Callable<SequentialGroupMember>)
+        }*.get()
+        executor.shutdown()
+
+        assertEquals((0..<20) as Set, members*.id as Set)
+        members.each {
+            assertTrue it.claimAttempts >= 1
+            assertTrue it.claimMillis >= 0
+        }
+
+        //a departed member's id is reused:
+        def departed = members.find { it.id == 7 }
+        departed.close()
+        def replacement = new SequentialGroupMember(newClient(), MEMBERS_PATH, new byte[0])
+        replacement.start()
+        assertEquals 7, replacement.id
+
+        (members - departed + replacement)*.close()
     }
 
     @Test
-    void testIdFromPathWithOne() {
-        String path = '/samza/jobs/foo/containers/_c_f1b351a4-fc30-44a7-8072-c3bc4635c09c-containers0000000001'
-        assertEquals 1, SequentialGroupMember.idFromPath(path);
+    void testListenersAreNotifiedOfMembershipChanges() {
+
+        def first = new SequentialGroupMember(newClient(), MEMBERS_PATH, new byte[0])
+        first.start()
+        assertEquals([0], first.currentMemberIds)
+
+        def changes = new LinkedBlockingQueue<List<Integer>>()
+        first.addListener({ ids -> changes.put(ids) } as SequentialGroupMember.MembershipListener)
+
+        def second = new SequentialGroupMember(newClient(), MEMBERS_PATH, new byte[0])
+        second.start()
+        assertEquals([0, 1], changes.poll(10, TimeUnit.SECONDS))
+        assertEquals([0, 1], second.currentMemberIds)
+
+        second.close()
+        assertEquals([0], changes.poll(10, TimeUnit.SECONDS))
+
+        first.close()
+    }
+
+    @Test
+    void testPreferredIdsAreClaimedIfFree() {
+
+        def members = (0..<3).collect {
+            def member = new SequentialGroupMember(newClient(), MEMBERS_PATH, new byte[0])
+            member.start()
+            member
+        }
+
+        //0 is taken, so the next preferred id is used instead of the lowest free one (3):
+        def preferring = new SequentialGroupMember(newClient(), MEMBERS_PATH, new byte[0])
+        preferring.preferredIds = [0, 7, 5]
+        preferring.start()
+        assertEquals 7, preferring.id
+
+        def fallback = new SequentialGroupMember(newClient(), MEMBERS_PATH, new byte[0])
+        fallback.preferredIds = [1, 2]
+        fallback.start()
+        assertEquals 3, fallback.id
+
+        (members + preferring + fallback)*.close()
     }
 
     @Test
-    void testIdFromPathWithVarious() {
-        String path = '/samza/jobs/foo/containers/_c_f1b351a4-fc30-44a7-8072-c3bc4635c09c-containers0012003001'
-        assertEquals 12003001, SequentialGroupMember.idFromPath(path);
+    void testOwnNodeIsAdoptedAfterALostCreateResponse() {
+
+        //the create succeeds, but its response is lost and Curator's retry finds the node:
+        def retried = new LostResponseMember(newClient(), new KeeperException.NodeExistsException())
+        retried.start()
+        assertEquals 0, retried.id
+        assertEquals([0], retried.currentMemberIds)
+
+        //the create succeeds, but the connection is lost until Curator gives up:
+        def lost = new LostResponseMember(newClient(), new KeeperException.ConnectionLossException())
+        lost.start()
+        assertEquals 1, lost.id
+        assertEquals([0, 1], lost.currentMemberIds)
+
+        [retried, lost]*.close()
+    }
+
+    static class LostResponseMember extends SequentialGroupMember {
+
+        KeeperException failure
+
+        LostResponseMember(CuratorFramework client, KeeperException failure) {
+            super(client, MEMBERS_PATH, new byte[0])
+            this.failure = failure
+        }
+
+        @Override
+        protected void createMemberNode(String path) throws Exception {
+            super.createMemberNode(path)
+            if (failure != null) {
+                def e = failure
+                failure = null
+                throw e
+            }
+        }
     }
-    */
 }
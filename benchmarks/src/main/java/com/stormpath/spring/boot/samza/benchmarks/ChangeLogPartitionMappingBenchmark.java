@@ -0,0 +1,78 @@
+package com.stormpath.spring.boot.samza.benchmarks;
+
+import com.stormpath.samza.curator.checkpoint.ZookeeperCheckpointManager;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.curator.test.TestingServer;
+import org.apache.samza.container.TaskName;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long {@link ZookeeperCheckpointManager#readChangeLogPartitionMapping()} takes to load the mapping of a
+ * job against a local ZooKeeper server, by task count.  {@code maxConcurrentReads=1} is equivalent to reading the
+ * tasks one at a time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ChangeLogPartitionMappingBenchmark {
+
+    @Param({"100", "1000", "5000"})
+    private int taskCount;
+
+    @Param({"1", "100"})
+    private int maxConcurrentReads;
+
+    private TestingServer server;
+    private CuratorFramework curator;
+    private ZookeeperCheckpointManager manager;
+
+    @Setup
+    public void setUp() throws Exception {
+
+        server = new TestingServer();
+        curator = CuratorFrameworkFactory.newClient(server.getConnectString(), new RetryOneTime(100));
+        curator.start();
+
+        manager = new ZookeeperCheckpointManager(curator, "/samza/jobs/benchmark");
+        manager.setMaxConcurrentReads(maxConcurrentReads);
+        manager.start();
+
+        Map<TaskName, Integer> mapping = new HashMap<>();
+        for (int i = 0; i < taskCount; i++) {
+            mapping.put(new TaskName("Partition " + i), i);
+        }
+        manager.writeChangeLogPartitionMapping(mapping);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        manager.close();
+        curator.close();
+        server.close();
+    }
+
+    @Benchmark
+    public Map<TaskName, Integer> readChangeLogPartitionMapping() {
+        return manager.readChangeLogPartitionMapping();
+    }
+}
@@ -0,0 +1,97 @@
+package com.stormpath.spring.boot.samza.benchmarks;
+
+import com.stormpath.curator.framework.recipes.nodes.SequentialGroupMember;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.curator.test.InstanceSpec;
+import org.apache.curator.test.TestingServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long it takes for {@code memberCount} {@link SequentialGroupMember}s that start at the same time to
+ * claim their ids against a local ZooKeeper server, like the containers of a job that is (re)deployed at once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SequentialGroupMemberBenchmark {
+
+    private static final String MEMBERS_PATH = "/samza/jobs/benchmark/containers";
+
+    @Param({"50", "200"})
+    private int memberCount;
+
+    private TestingServer server;
+    private List<CuratorFramework> clients; //one session per member, like separate containers
+    private ExecutorService executor;
+    private List<SequentialGroupMember> members;
+
+    @Setup
+    public void setUp() throws Exception {
+        //maxClientCnxns = 0: ZooKeeper otherwise only allows 60 connections per client address
+        server = new TestingServer(new InstanceSpec(null, -1, -1, -1, true, -1, -1, 0), true);
+        clients = new ArrayList<>(memberCount);
+        for (int i = 0; i < memberCount; i++) {
+            CuratorFramework client =
+                CuratorFrameworkFactory.newClient(server.getConnectString(), new RetryOneTime(100));
+            client.start();
+            client.blockUntilConnected();
+            clients.add(client);
+        }
+        executor = Executors.newFixedThreadPool(memberCount);
+    }
+
+    @TearDown(Level.Invocation)
+    public void leave() {
+        members.forEach(SequentialGroupMember::close);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+        for (CuratorFramework client : clients) {
+            client.close();
+        }
+        server.close();
+    }
+
+    @Benchmark
+    public List<SequentialGroupMember> startConcurrently() {
+        List<CompletableFuture<SequentialGroupMember>> futures = new ArrayList<>(memberCount);
+        for (CuratorFramework client : clients) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                SequentialGroupMember member = new SequentialGroupMember(client, MEMBERS_PATH, new byte[0]);
+                member.start();
+                return member;
+            }, executor));
+        }
+        members = new ArrayList<>(memberCount);
+        for (CompletableFuture<SequentialGroupMember> future : futures) {
+            members.add(future.join());
+        }
+        return members;
+    }
+}
@@ -0,0 +1,141 @@
+package com.stormpath.spring.boot.samza.benchmarks;
+
+import com.stormpath.samza.serializers.SpringSerde;
+import org.apache.samza.serializers.Serde;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.CompilerControl;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.serializer.Deserializer;
+import org.springframework.core.serializer.Serializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link SpringSerde} with its previous implementation, which allocated a default-sized
+ * ByteArrayOutputStream per message (growing it by copying) and copied the result once more.  The serializer only
+ * copies the payload, so the results are dominated by the serde's own buffer handling.  Run with {@code -prof gc} to
+ * compare allocation rates ({@code gc.alloc.rate.norm} is bytes per message).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpringSerdeBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int payloadSize;
+
+    private byte[] payload;
+    private byte[] serialized;
+    private ByteBuffer serializedBuffer;
+
+    private Serde<byte[]> legacy;
+    private SpringSerde<byte[]> serde;
+
+    @Setup
+    public void setUp() {
+        payload = new byte[payloadSize];
+        ThreadLocalRandom.current().nextBytes(payload);
+
+        //reads into a scratch array, so deserialization measures the serde and not the payload allocation:
+        byte[] scratch = new byte[payloadSize];
+        Serializer<byte[]> serializer = (bytes, out) -> out.write(bytes);
+        Deserializer<byte[]> deserializer = in -> readFully(in, scratch);
+
+        legacy = new LegacySpringSerde<>(serializer, deserializer);
+        serde = new SpringSerde<>(serializer, deserializer);
+
+        serialized = serde.toBytes(payload);
+        serializedBuffer = ByteBuffer.wrap(serialized);
+    }
+
+    @Benchmark
+    public byte[] legacyToBytes() {
+        return legacy.toBytes(payload);
+    }
+
+    @Benchmark
+    public byte[] toBytes() {
+        return serde.toBytes(payload);
+    }
+
+    @Benchmark
+    public ByteBuffer toByteBuffer() {
+        return serde.toByteBuffer(payload);
+    }
+
+    @Benchmark
+    public byte[] legacyFromBytes() {
+        return legacy.fromBytes(serialized);
+    }
+
+    @Benchmark
+    public byte[] fromBytes() {
+        return serde.fromBytes(serialized);
+    }
+
+    @Benchmark
+    public byte[] fromByteBuffer() {
+        return serde.fromByteBuffer(serializedBuffer);
+    }
+
+    //like real deserializers (e.g. Jackson or ObjectInputStream), the stream isn't inlined away, so it escapes:
+    @CompilerControl(CompilerControl.Mode.DONT_INLINE)
+    private static byte[] readFully(InputStream in, byte[] scratch) throws IOException {
+        int read = 0;
+        int n;
+        while (read < scratch.length && (n = in.read(scratch, read, scratch.length - read)) > 0) {
+            read += n;
+        }
+        return scratch;
+    }
+
+    //SpringSerde before buffers were reused:
+    static class LegacySpringSerde<T> implements Serde<T> {
+
+        private final Serializer<T> serializer;
+        private final Deserializer<T> deserializer;
+
+        LegacySpringSerde(Serializer<T> serializer, Deserializer<T> deserializer) {
+            this.serializer = serializer;
+            this.deserializer = deserializer;
+        }
+
+        @Override
+        public byte[] toBytes(T object) {
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            try {
+                serializer.serialize(object, stream);
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e);
+            }
+            return stream.toByteArray();
+        }
+
+        @Override
+        public T fromBytes(byte[] bytes) {
+            try {
+                return deserializer.deserialize(new ByteArrayInputStream(bytes));
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+    }
+}
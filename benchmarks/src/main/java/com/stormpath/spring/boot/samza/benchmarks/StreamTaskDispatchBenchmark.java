@@ -0,0 +1,211 @@
+package com.stormpath.spring.boot.samza.benchmarks;
+
+import com.stormpath.samza.task.AsyncStreamTask;
+import com.stormpath.samza.task.BatchStreamTask;
+import com.stormpath.spring.boot.samza.ConfigTimeStreamTask;
+import org.apache.samza.Partition;
+import org.apache.samza.config.MapConfig;
+import org.apache.samza.container.TaskName;
+import org.apache.samza.metrics.MetricsRegistry;
+import org.apache.samza.metrics.MetricsRegistryMap;
+import org.apache.samza.system.IncomingMessageEnvelope;
+import org.apache.samza.system.SystemStreamPartition;
+import org.apache.samza.task.MessageCollector;
+import org.apache.samza.task.StreamTask;
+import org.apache.samza.task.TaskContext;
+import org.apache.samza.task.TaskCoordinator;
+import org.apache.samza.task.WindowableTask;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.context.support.GenericApplicationContext;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of dispatching messages through {@link ConfigTimeStreamTask} compared to calling the same
+ * {@link StreamTask} directly.
+ * <p>
+ * The delegate kind (plain, batch or async) is chosen once per application context, so in a running job the
+ * delegate call site only ever sees one class.  The {@code megamorphic} profile first runs messages through
+ * ConfigTimeStreamTasks of all three kinds, to show what that call site would cost if it didn't.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StreamTaskDispatchBenchmark {
+
+    private static final SystemStreamPartition SSP =
+        new SystemStreamPartition("benchmark", "input", new Partition(0));
+
+    @Param({"monomorphic", "megamorphic"})
+    public String profile;
+
+    private final IncomingMessageEnvelope envelope = new IncomingMessageEnvelope(SSP, "0", "key", "message");
+
+    private GenericApplicationContext appCtx;
+    private final List<GenericApplicationContext> otherAppCtxs = new ArrayList<>();
+    private StreamTask direct;
+    private ConfigTimeStreamTask configTime;
+
+    @Setup
+    public void setUp() throws Exception {
+
+        direct = new CountingTask();
+
+        if ("megamorphic".equals(profile)) {
+            List<ConfigTimeStreamTask> others = new ArrayList<>();
+            others.add(newConfigTimeStreamTask(CountingBatchTask.class));
+            others.add(newConfigTimeStreamTask(CountingAsyncTask.class));
+            appCtx = newApplicationContext(CountingTask.class);
+            configTime = newConfigTimeStreamTask(appCtx);
+            others.add(configTime);
+            for (int i = 0; i < 100000; i++) {
+                for (ConfigTimeStreamTask task : others) {
+                    task.process(envelope, null, null);
+                }
+            }
+        } else {
+            appCtx = newApplicationContext(CountingTask.class);
+            configTime = newConfigTimeStreamTask(appCtx);
+        }
+    }
+
+    private ConfigTimeStreamTask newConfigTimeStreamTask(Class<?> taskClass) throws Exception {
+        GenericApplicationContext ctx = newApplicationContext(taskClass);
+        otherAppCtxs.add(ctx);
+        return newConfigTimeStreamTask(ctx);
+    }
+
+    private static GenericApplicationContext newApplicationContext(Class<?> taskClass) {
+        GenericApplicationContext ctx = new GenericApplicationContext();
+        RootBeanDefinition definition = new RootBeanDefinition(taskClass);
+        definition.setScope(BeanDefinition.SCOPE_PROTOTYPE);
+        ctx.registerBeanDefinition("streamTask", definition);
+        ctx.refresh();
+        return ctx;
+    }
+
+    private static ConfigTimeStreamTask newConfigTimeStreamTask(GenericApplicationContext ctx) throws Exception {
+        ConfigTimeStreamTask.setApplicationContext(ctx);
+        ConfigTimeStreamTask task = new ConfigTimeStreamTask();
+        task.init(new MapConfig(), new BenchmarkTaskContext());
+        return task;
+    }
+
+    @TearDown
+    public void tearDown() {
+        ConfigTimeStreamTask.setApplicationContext(null);
+        appCtx.close();
+        otherAppCtxs.forEach(GenericApplicationContext::close);
+        otherAppCtxs.clear();
+    }
+
+    @Benchmark
+    public void directProcess() throws Exception {
+        direct.process(envelope, null, null);
+    }
+
+    @Benchmark
+    public void configTimeProcess() throws Exception {
+        configTime.process(envelope, null, null);
+    }
+
+    @Benchmark
+    public void directWindow() throws Exception {
+        ((WindowableTask) direct).window(null, null);
+    }
+
+    @Benchmark
+    public void configTimeWindow() throws Exception {
+        configTime.window(null, null);
+    }
+
+    public static class CountingTask implements StreamTask, WindowableTask {
+
+        private long messages;
+        private long windows;
+
+        @Override
+        public void process(IncomingMessageEnvelope envelope, MessageCollector collector,
+                            TaskCoordinator coordinator) throws Exception {
+            messages++;
+        }
+
+        @Override
+        public void window(MessageCollector collector, TaskCoordinator coordinator) throws Exception {
+            windows++;
+        }
+    }
+
+    public static class CountingBatchTask implements BatchStreamTask {
+
+        private long messages;
+
+        @Override
+        public void processBatch(List<IncomingMessageEnvelope> envelopes, MessageCollector collector,
+                                 TaskCoordinator coordinator) throws Exception {
+            messages += envelopes.size();
+        }
+    }
+
+    public static class CountingAsyncTask implements AsyncStreamTask {
+
+        private long messages;
+
+        @Override
+        public CompletionStage<?> process(IncomingMessageEnvelope envelope, MessageCollector collector,
+                                          TaskCoordinator coordinator) throws Exception {
+            messages++;
+            return null;
+        }
+    }
+
+    private static class BenchmarkTaskContext implements TaskContext {
+
+        private final MetricsRegistry registry = new MetricsRegistryMap();
+
+        @Override
+        public MetricsRegistry getMetricsRegistry() {
+            return registry;
+        }
+
+        @Override
+        public Set<SystemStreamPartition> getSystemStreamPartitions() {
+            return Collections.singleton(SSP);
+        }
+
+        @Override
+        public Object getStore(String name) {
+            return null;
+        }
+
+        @Override
+        public TaskName getTaskName() {
+            return new TaskName("Partition 0");
+        }
+
+        @Override
+        public void setStartingOffset(SystemStreamPartition ssp, String offset) {
+        }
+    }
+}
@@ -5,15 +5,34 @@ import org.springframework.core.serializer.Deserializer;
 import org.springframework.core.serializer.Serializer;
 import org.springframework.util.Assert;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
+/**
+ * A Samza {@link Serde} that delegates to a Spring {@link Serializer} and {@link Deserializer}.
+ * <p>
+ * Each thread serializes into its own reusable buffer, which starts at {@link #setInitialBufferSize(int)
+ * initialBufferSize} bytes and keeps the capacity it grew to (up to {@link #setMaxRetainedBufferSize(int)
+ * maxRetainedBufferSize}), so the only allocation per message is the exact-size result of {@link #toBytes(Object)}.
+ * {@link #toByteBuffer(Object)} avoids even that copy.
+ */
 public class SpringSerde<T> implements Serde<T> {
 
+    public static final int DEFAULT_INITIAL_BUFFER_SIZE = 256;
+    public static final int DEFAULT_MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+
     private final Serializer<T> serializer;
     private final Deserializer<T> deserializer;
 
+    private int initialBufferSize = DEFAULT_INITIAL_BUFFER_SIZE;
+    private int maxRetainedBufferSize = DEFAULT_MAX_RETAINED_BUFFER_SIZE;
+
+    private final ThreadLocal<OutputBuffer> outputBuffers = new ThreadLocal<>();
+    private final ThreadLocal<InputBuffer> inputBuffers = new ThreadLocal<>();
+
     public SpringSerde(Serializer<T> serializer, Deserializer<T> deserializer) {
         Assert.notNull(serializer, "Serializer cannot be null.");
         Assert.notNull(deserializer, "Deserializer cannot be null.");
@@ -21,19 +40,76 @@ public class SpringSerde<T> implements Serde<T> {
         this.deserializer = deserializer;
     }
 
+    public int getInitialBufferSize() {
+        return initialBufferSize;
+    }
+
+    /**
+     * Sets the initial capacity of each thread's output buffer, ideally the size of a typical serialized message.
+     *
+     * @param initialBufferSize the initial output buffer capacity in bytes
+     */
+    public void setInitialBufferSize(int initialBufferSize) {
+        Assert.isTrue(initialBufferSize > 0, "initialBufferSize must be greater than zero.");
+        this.initialBufferSize = initialBufferSize;
+    }
+
+    public int getMaxRetainedBufferSize() {
+        return maxRetainedBufferSize;
+    }
+
+    /**
+     * Sets the largest output buffer capacity a thread keeps between messages.  Buffers that grew beyond it (for an
+     * unusually large message) are released instead of being reused.
+     *
+     * @param maxRetainedBufferSize the largest output buffer capacity to keep in bytes
+     */
+    public void setMaxRetainedBufferSize(int maxRetainedBufferSize) {
+        Assert.isTrue(maxRetainedBufferSize > 0, "maxRetainedBufferSize must be greater than zero.");
+        this.maxRetainedBufferSize = maxRetainedBufferSize;
+    }
+
     @Override
     public byte[] toBytes(T object) {
         if (object == null) {
             return null;
         }
-        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        OutputBuffer buffer = acquireOutputBuffer();
+        try {
+            serialize(object, buffer);
+            return buffer.toByteArray();
+        } finally {
+            releaseOutputBuffer(buffer);
+        }
+    }
+
+    /**
+     * Serializes the object without copying the result: the returned buffer is backed by this thread's output
+     * buffer, so it is only valid until this serde serializes the next object on the same thread.
+     *
+     * @param object the object to serialize
+     * @return a buffer positioned at the serialized bytes, or {@code null} if the object is {@code null}
+     */
+    public ByteBuffer toByteBuffer(T object) {
+        if (object == null) {
+            return null;
+        }
+        OutputBuffer buffer = acquireOutputBuffer();
         try {
-            serializer.serialize(object, stream);
+            serialize(object, buffer);
+            return buffer.toByteBuffer();
+        } finally {
+            releaseOutputBuffer(buffer);
+        }
+    }
+
+    private void serialize(T object, OutputBuffer buffer) {
+        try {
+            serializer.serialize(object, buffer);
         } catch (IOException e) {
             String msg = "Unable to serialize object [" + object + "]: " + e.getMessage();
             throw new IllegalArgumentException(msg);
         }
-        return stream.toByteArray();
     }
 
     @Override
@@ -41,12 +117,192 @@ public class SpringSerde<T> implements Serde<T> {
         if (bytes == null || bytes.length == 0) {
             return null;
         }
-        ByteArrayInputStream stream = new ByteArrayInputStream(bytes);
+        return deserialize(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Deserializes the remaining bytes of the buffer without copying them if the buffer is backed by an array.  The
+     * buffer's position is not changed.
+     *
+     * @param buffer the buffer to deserialize
+     * @return the deserialized object, or {@code null} if the buffer is {@code null} or has no remaining bytes
+     */
+    public T fromByteBuffer(ByteBuffer buffer) {
+        if (buffer == null || !buffer.hasRemaining()) {
+            return null;
+        }
+        if (buffer.hasArray()) {
+            return deserialize(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+        byte[] bytes = new byte[buffer.remaining()]; //direct buffer
+        buffer.duplicate().get(bytes);
+        return deserialize(bytes, 0, bytes.length);
+    }
+
+    private T deserialize(byte[] bytes, int offset, int length) {
+        InputBuffer stream = inputBuffers.get();
+        if (stream == null) {
+            stream = new InputBuffer();
+            inputBuffers.set(stream);
+        } else if (stream.inUse) { //nested
+            stream = new InputBuffer();
+        }
+        stream.set(bytes, offset, length);
+        stream.inUse = true;
         try {
             return deserializer.deserialize(stream);
         } catch (IOException e) {
-            String msg = "Unable to deserialize byte array of length " + bytes.length + ": " + e.getMessage();
+            String msg = "Unable to deserialize byte array of length " + length + ": " + e.getMessage();
             throw new IllegalArgumentException(msg, e);
+        } finally {
+            stream.clear();
+            stream.inUse = false;
+        }
+    }
+
+    private OutputBuffer acquireOutputBuffer() {
+        OutputBuffer buffer = outputBuffers.get();
+        if (buffer == null) {
+            buffer = new OutputBuffer(initialBufferSize);
+            outputBuffers.set(buffer);
+        } else if (buffer.inUse) { //e.g. the serializer serializes nested objects with this serde
+            return new OutputBuffer(initialBufferSize);
+        }
+        buffer.reset();
+        buffer.inUse = true;
+        return buffer;
+    }
+
+    private void releaseOutputBuffer(OutputBuffer buffer) {
+        if (buffer.inUse) {
+            buffer.inUse = false;
+            if (buffer.capacity() > maxRetainedBufferSize) {
+                outputBuffers.remove();
+            }
+        }
+    }
+
+    //like ByteArrayOutputStream, but unsynchronized (it is confined to one thread) and exposing its array, so results
+    //are copied exactly once (or not at all):
+    private static class OutputBuffer extends OutputStream {
+
+        private byte[] buf;
+        private int count = 0;
+        private boolean inUse = false;
+
+        OutputBuffer(int size) {
+            this.buf = new byte[size];
+        }
+
+        int capacity() {
+            return buf.length;
+        }
+
+        void reset() {
+            count = 0;
+        }
+
+        private void ensureCapacity(int minCapacity) {
+            if (minCapacity < 0) { //overflow
+                throw new OutOfMemoryError("Serialized object is too large.");
+            }
+            if (minCapacity > buf.length) {
+                int capacity = buf.length << 1;
+                buf = Arrays.copyOf(buf, capacity - minCapacity < 0 ? minCapacity : capacity);
+            }
+        }
+
+        @Override
+        public void write(int b) {
+            ensureCapacity(count + 1);
+            buf[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (off < 0 || len < 0 || len > b.length - off) {
+                throw new IndexOutOfBoundsException();
+            }
+            ensureCapacity(count + len);
+            System.arraycopy(b, off, buf, count, len);
+            count += len;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, count);
+        }
+
+        ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+
+    //like ByteArrayInputStream, but unsynchronized and reusable for the next message:
+    private static class InputBuffer extends InputStream {
+
+        private static final byte[] EMPTY = new byte[0];
+
+        private byte[] buf = EMPTY;
+        private int pos = 0;
+        private int count = 0;
+        private int mark = 0;
+        private boolean inUse = false;
+
+        void set(byte[] bytes, int offset, int length) {
+            this.buf = bytes;
+            this.pos = offset;
+            this.count = offset + length;
+            this.mark = offset;
+        }
+
+        void clear() {
+            set(EMPTY, 0, 0); //don't keep the last message reachable
+        }
+
+        @Override
+        public int read() {
+            return pos < count ? buf[pos++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (off < 0 || len < 0 || len > b.length - off) {
+                throw new IndexOutOfBoundsException();
+            }
+            if (pos >= count) {
+                return -1;
+            }
+            int n = Math.min(len, count - pos);
+            System.arraycopy(buf, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            long k = Math.max(0, Math.min(n, count - pos));
+            pos += k;
+            return k;
+        }
+
+        @Override
+        public int available() {
+            return count - pos;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public void mark(int readLimit) {
+            mark = pos;
+        }
+
+        @Override
+        public void reset() {
+            pos = mark;
         }
     }
 }
@@ -0,0 +1,38 @@
+package com.stormpath.samza.task;
+
+import org.apache.samza.system.IncomingMessageEnvelope;
+import org.apache.samza.task.MessageCollector;
+import org.apache.samza.task.TaskCoordinator;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * A task that processes messages asynchronously, e.g. while waiting on a remote lookup, so that one slow message
+ * doesn't block the other partitions of the container.
+ * <p>
+ * At most {@code task.async.max.inflight} messages per task are processed concurrently; once that many are in flight,
+ * the container waits for one of them to complete before consuming more messages.  Checkpoints only advance past a
+ * message once it and all earlier messages of its partition have completed.  Messages still in flight when the task
+ * is closed must complete within {@code task.async.flush.timeout.ms} milliseconds, or the container fails.
+ * <p>
+ * A task may additionally implement {@link org.apache.samza.task.InitableTask InitableTask},
+ * {@link org.apache.samza.task.WindowableTask WindowableTask} and
+ * {@link org.apache.samza.task.ClosableTask ClosableTask}.
+ */
+public interface AsyncStreamTask {
+
+    /**
+     * Starts processing a message.
+     *
+     * @param envelope    the message to process
+     * @param collector   the collector used to send messages.  It may be used from any thread until the returned
+     *                    stage completes; sent messages are handed to Samza by the container thread.
+     * @param coordinator the coordinator used to request commits or shutdown.  Requests are only honored if they are
+     *                    made before this method returns.
+     * @return a stage that completes when the message has been processed, or completes exceptionally to fail the
+     * container.  May be null if the message was processed synchronously.
+     * @throws Exception if the message cannot be processed; the container will fail.
+     */
+    CompletionStage<?> process(IncomingMessageEnvelope envelope, MessageCollector collector,
+                               TaskCoordinator coordinator) throws Exception;
+}
@@ -0,0 +1,35 @@
+package com.stormpath.samza.task;
+
+import org.apache.samza.system.IncomingMessageEnvelope;
+import org.apache.samza.task.MessageCollector;
+import org.apache.samza.task.TaskCoordinator;
+
+import java.util.List;
+
+/**
+ * A task that processes messages in batches instead of one at a time, e.g. to write many messages to a downstream
+ * store in a single request.
+ * <p>
+ * A batch is handed to the task once it reaches the configured {@code task.batch.size} messages,
+ * {@code task.batch.bytes} bytes or {@code task.batch.linger.ms} milliseconds.  Checkpoints only advance past messages
+ * whose batch has been processed successfully, so messages in an unprocessed batch are consumed again after a
+ * restart.
+ * <p>
+ * A task may additionally implement {@link org.apache.samza.task.InitableTask InitableTask},
+ * {@link org.apache.samza.task.WindowableTask WindowableTask} and
+ * {@link org.apache.samza.task.ClosableTask ClosableTask}.
+ */
+public interface BatchStreamTask {
+
+    /**
+     * Processes a batch of messages.
+     *
+     * @param envelopes   the messages in the batch, in the order they were received.  The list is read-only and only
+     *                    valid for the duration of the call.
+     * @param collector   the collector used to send messages
+     * @param coordinator the coordinator used to request commits or shutdown
+     * @throws Exception if the batch cannot be processed; the container will fail.
+     */
+    void processBatch(List<IncomingMessageEnvelope> envelopes, MessageCollector collector, TaskCoordinator coordinator)
+        throws Exception;
+}
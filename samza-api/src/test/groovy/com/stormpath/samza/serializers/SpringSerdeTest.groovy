@@ -7,6 +7,8 @@ import org.springframework.core.serializer.DefaultSerializer
 import org.springframework.core.serializer.Deserializer
 import org.springframework.core.serializer.Serializer;
 
+import java.nio.ByteBuffer
+
 import static org.junit.Assert.*
 import static org.easymock.EasyMock.*
 
@@ -71,4 +73,40 @@ class SpringSerdeTest {
             verify deserializer
         }
     }
+
+    @Test
+    void testReusedBuffersDoNotShareResults() {
+        serde.initialBufferSize = 8 //grows
+        serde.maxRetainedBufferSize = 64 //the large message's buffer is released
+        def large = 'x' * 1000
+        byte[] first = serde.toBytes('foo')
+        byte[] second = serde.toBytes(large)
+        byte[] third = serde.toBytes('bar')
+        assertEquals 'foo', serde.fromBytes(first)
+        assertEquals large, serde.fromBytes(second)
+        assertEquals 'bar', serde.fromBytes(third)
+    }
+
+    @Test
+    void testByteBufferRoundTrip() {
+        assertNull serde.toByteBuffer(null)
+        assertNull serde.fromByteBuffer(ByteBuffer.allocate(0))
+
+        ByteBuffer buffer = serde.toByteBuffer('foo')
+        assertArrayEquals serde.toBytes('foo'), Arrays.copyOfRange(buffer.array(), buffer.position(), buffer.limit())
+
+        //only the remaining bytes of a slice are read, without changing its position:
+        byte[] bytes = serde.toBytes('bar')
+        ByteBuffer padded = ByteBuffer.allocate(bytes.length + 4)
+        padded.position(2)
+        padded.put(bytes)
+        padded.position(2)
+        padded.limit(2 + bytes.length)
+        assertEquals 'bar', serde.fromByteBuffer(padded.slice())
+        assertEquals 2, padded.position()
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length)
+        direct.put(bytes).flip()
+        assertEquals 'bar', serde.fromByteBuffer(direct)
+    }
 }
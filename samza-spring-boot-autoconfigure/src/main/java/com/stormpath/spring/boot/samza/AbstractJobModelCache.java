@@ -0,0 +1,69 @@
+package com.stormpath.spring.boot.samza;
+
+import org.apache.samza.job.model.JobModel;
+import org.apache.samza.serializers.model.SamzaObjectMapper;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.springframework.util.Assert;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Base class for caches that store a single (the most recent) entry as a gzipped key followed by the JobModel in the
+ * same JSON format Samza uses to distribute it to containers.
+ */
+public abstract class AbstractJobModelCache implements JobModelCache {
+
+    private static final ObjectMapper MAPPER = SamzaObjectMapper.getObjectMapper();
+
+    /**
+     * Returns the stored bytes, or {@code null} if nothing has been stored yet.
+     *
+     * @return the stored bytes, or {@code null} if nothing has been stored yet.
+     * @throws IOException if the bytes cannot be read
+     */
+    protected abstract byte[] read() throws IOException;
+
+    protected abstract void write(byte[] bytes) throws IOException;
+
+    @Override
+    public JobModel get(String key) {
+        Assert.hasText(key, "key cannot be null or empty.");
+        try {
+            byte[] bytes = read();
+            if (bytes == null || bytes.length == 0) {
+                return null;
+            }
+            try (DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(bytes)))) {
+                String storedKey = in.readUTF();
+                if (!key.equals(storedKey)) { //inputs have changed since the JobModel was stored
+                    return null;
+                }
+                return MAPPER.readValue(in, JobModel.class);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to read cached JobModel: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void put(String key, JobModel jobModel) {
+        Assert.hasText(key, "key cannot be null or empty.");
+        Assert.notNull(jobModel, "JobModel cannot be null.");
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes))) {
+                out.writeUTF(key);
+                MAPPER.writeValue(out, jobModel);
+            }
+            write(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to write cached JobModel: " + e.getMessage(), e);
+        }
+    }
+}
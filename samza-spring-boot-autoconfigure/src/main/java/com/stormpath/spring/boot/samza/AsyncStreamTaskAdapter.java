@@ -0,0 +1,241 @@
+package com.stormpath.spring.boot.samza;
+
+import com.stormpath.samza.task.AsyncStreamTask;
+import org.apache.samza.SamzaException;
+import org.apache.samza.checkpoint.Checkpoint;
+import org.apache.samza.config.Config;
+import org.apache.samza.container.TaskName;
+import org.apache.samza.system.IncomingMessageEnvelope;
+import org.apache.samza.system.OutgoingMessageEnvelope;
+import org.apache.samza.system.SystemStreamPartition;
+import org.apache.samza.task.ClosableTask;
+import org.apache.samza.task.InitableTask;
+import org.apache.samza.task.MessageCollector;
+import org.apache.samza.task.TaskContext;
+import org.apache.samza.task.TaskCoordinator;
+import org.apache.samza.task.WindowableTask;
+import org.springframework.util.Assert;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Adapts an {@link AsyncStreamTask} to Samza's {@link org.apache.samza.task.StreamTask StreamTask}.
+ * <p>
+ * Up to {@code task.async.max.inflight} envelopes are processed concurrently.  When that many are in flight,
+ * {@link #process} blocks the container thread until one completes, which stops the container from polling for more
+ * messages.  Messages sent by the delegate are buffered and handed to Samza's collector by the container thread, and
+ * an envelope's offset is only committed once it and every earlier envelope of its partition have completed.
+ * <p>
+ * Completions are noticed whenever a message arrives or the task is windowed, so {@code task.window.ms} should be set
+ * if checkpoints must advance while no messages arrive.
+ * <p>
+ * {@link #flush} waits at most {@code task.async.flush.timeout.ms} milliseconds for the envelopes in flight to complete
+ * and fails otherwise, so a delegate that never completes a stage fails the container instead of hanging it.
+ */
+public class AsyncStreamTaskAdapter implements BufferingStreamTask, InitableTask, WindowableTask, ClosableTask {
+
+    public static final String MAX_INFLIGHT = "task.async.max.inflight";
+    public static final String FLUSH_TIMEOUT_MS = "task.async.flush.timeout.ms";
+
+    private final AsyncStreamTask delegate;
+
+    private int maxInFlight = 10;
+    private long flushTimeoutMillis = 60000;
+    private Semaphore permits;
+
+    private TaskName taskName;
+
+    //sent by the delegate on any thread, forwarded to Samza by the container thread:
+    private final Queue<OutgoingMessageEnvelope> outgoing = new ConcurrentLinkedQueue<>();
+    private final MessageCollector bufferedCollector = outgoing::add;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    //only accessed by the container thread:
+    private final Map<SystemStreamPartition, Deque<InFlight>> inFlight = new HashMap<>();
+    private final Set<SystemStreamPartition> pendingPartitions = new HashSet<>();
+    private final Map<SystemStreamPartition, String> processedOffsets = new HashMap<>();
+    private MessageCollector collector;
+
+    public AsyncStreamTaskAdapter(AsyncStreamTask delegate) {
+        Assert.notNull(delegate, "AsyncStreamTask cannot be null.");
+        this.delegate = delegate;
+    }
+
+    public AsyncStreamTask getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public void init(Config config, TaskContext context) throws Exception {
+
+        this.maxInFlight = config.getInt(MAX_INFLIGHT, maxInFlight);
+        this.flushTimeoutMillis = config.getLong(FLUSH_TIMEOUT_MS, flushTimeoutMillis);
+        Assert.isTrue(maxInFlight > 0, MAX_INFLIGHT + " must be a positive integer (greater than zero).");
+        Assert.isTrue(flushTimeoutMillis >= 0, FLUSH_TIMEOUT_MS + " must be greater than or equal to zero.");
+        this.permits = new Semaphore(maxInFlight);
+
+        this.taskName = context.getTaskName();
+        BufferingCheckpointManager.register(taskName, this);
+
+        if (delegate instanceof InitableTask) {
+            ((InitableTask) delegate).init(config, context);
+        }
+    }
+
+    @Override
+    public void process(IncomingMessageEnvelope envelope, MessageCollector collector, TaskCoordinator coordinator)
+        throws Exception {
+
+        this.collector = collector;
+
+        permits.acquire(); //backpressure: wait until fewer than maxInFlight envelopes are being processed
+        throwIfFailed();
+
+        CompletionStage<?> stage;
+        try {
+            stage = delegate.process(envelope, bufferedCollector, coordinator);
+        } catch (Exception e) {
+            permits.release();
+            throw e;
+        }
+
+        SystemStreamPartition ssp = envelope.getSystemStreamPartition();
+        InFlight entry = new InFlight(envelope.getOffset());
+        inFlight.computeIfAbsent(ssp, k -> new ArrayDeque<>()).add(entry);
+        pendingPartitions.add(ssp);
+
+        if (stage == null) {
+            entry.done = true;
+            permits.release();
+        } else {
+            stage.whenComplete((result, e) -> {
+                if (e != null) {
+                    failure.compareAndSet(null, e);
+                } else {
+                    entry.done = true;
+                }
+                permits.release();
+            });
+        }
+
+        complete();
+    }
+
+    @Override
+    public void window(MessageCollector collector, TaskCoordinator coordinator) throws Exception {
+
+        this.collector = collector;
+        complete();
+
+        if (delegate instanceof WindowableTask) {
+            ((WindowableTask) delegate).window(collector, coordinator);
+        }
+    }
+
+    /**
+     * Waits until every envelope passed to {@link #process} so far has completed.
+     *
+     * @throws Exception if processing an envelope failed or did not complete within {@code task.async.flush.timeout.ms}
+     */
+    @Override
+    public void flush() throws Exception {
+        if (permits == null) { //never initialized
+            return;
+        }
+        if (!permits.tryAcquire(maxInFlight, flushTimeoutMillis, TimeUnit.MILLISECONDS)) {
+            throwIfFailed();
+            throw new SamzaException("Timed out after " + flushTimeoutMillis + " ms waiting for " +
+                getInFlightCount() + " in-flight envelope(s) of task " + taskName + " to complete (see " +
+                FLUSH_TIMEOUT_MS + ").");
+        }
+        permits.release(maxInFlight);
+        complete();
+    }
+
+    @Override
+    public void close() throws Exception {
+        try {
+            flush();
+        } finally {
+            if (taskName != null) {
+                BufferingCheckpointManager.unregister(taskName, this);
+            }
+            if (delegate instanceof ClosableTask) {
+                ((ClosableTask) delegate).close();
+            }
+        }
+    }
+
+    @Override
+    public Checkpoint getCommittableCheckpoint(Checkpoint checkpoint, Checkpoint previous) {
+        return BufferingCheckpointManager.rewind(checkpoint, previous, pendingPartitions, processedOffsets);
+    }
+
+    public int getInFlightCount() {
+        return permits != null ? maxInFlight - permits.availablePermits() : 0;
+    }
+
+    /**
+     * Advances the processed offset of each partition past its completed envelopes and forwards the messages they
+     * sent.  Completions are collected first: a completed envelope's messages are already queued, so they are always
+     * forwarded (and flushed by the next commit) before its offset is checkpointed.
+     */
+    private void complete() throws Exception {
+
+        throwIfFailed();
+
+        for (Map.Entry<SystemStreamPartition, Deque<InFlight>> e : inFlight.entrySet()) {
+            Deque<InFlight> entries = e.getValue();
+            InFlight last = null;
+            while (!entries.isEmpty() && entries.peekFirst().done) {
+                last = entries.pollFirst();
+            }
+            if (last != null) {
+                processedOffsets.put(e.getKey(), last.offset);
+            }
+            if (entries.isEmpty()) {
+                pendingPartitions.remove(e.getKey());
+            }
+        }
+
+        OutgoingMessageEnvelope message;
+        while ((message = outgoing.poll()) != null) {
+            collector.send(message);
+        }
+    }
+
+    private void throwIfFailed() throws Exception {
+        Throwable t = failure.get();
+        if (t instanceof CompletionException && t.getCause() != null) {
+            t = t.getCause();
+        }
+        if (t instanceof Exception) {
+            throw (Exception) t;
+        }
+        if (t != null) {
+            throw new SamzaException("Asynchronous processing failed in task " + taskName + ": " + t.getMessage(), t);
+        }
+    }
+
+    private static class InFlight {
+
+        private final String offset;
+        private volatile boolean done;
+
+        InFlight(String offset) {
+            this.offset = offset;
+        }
+    }
+}
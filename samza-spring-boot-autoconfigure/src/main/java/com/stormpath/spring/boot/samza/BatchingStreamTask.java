@@ -0,0 +1,194 @@
+package com.stormpath.spring.boot.samza;
+
+import com.stormpath.samza.task.BatchStreamTask;
+import org.apache.samza.checkpoint.Checkpoint;
+import org.apache.samza.config.Config;
+import org.apache.samza.container.TaskName;
+import org.apache.samza.system.IncomingMessageEnvelope;
+import org.apache.samza.system.SystemStreamPartition;
+import org.apache.samza.task.ClosableTask;
+import org.apache.samza.task.InitableTask;
+import org.apache.samza.task.MessageCollector;
+import org.apache.samza.task.TaskContext;
+import org.apache.samza.task.TaskCoordinator;
+import org.apache.samza.task.WindowableTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Adapts a {@link BatchStreamTask} to Samza's {@link org.apache.samza.task.StreamTask StreamTask}: envelopes are
+ * buffered until the batch reaches {@code task.batch.size} messages, {@code task.batch.bytes} bytes or is older than
+ * {@code task.batch.linger.ms}.
+ * <p>
+ * Samza considers an envelope processed as soon as {@link #process} returns, so checkpoints written while a batch is
+ * pending are rewritten by {@link BufferingCheckpointManager} to the last offset of each partition that was part of a
+ * processed batch.
+ * <p>
+ * The linger time is checked whenever a message arrives or the task is windowed, so {@code task.window.ms} should be
+ * set if batches must be processed while no messages arrive.
+ */
+public class BatchingStreamTask implements BufferingStreamTask, InitableTask, WindowableTask, ClosableTask {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchingStreamTask.class);
+
+    public static final String BATCH_SIZE = "task.batch.size";
+    public static final String BATCH_BYTES = "task.batch.bytes";
+    public static final String BATCH_LINGER_MS = "task.batch.linger.ms";
+
+    private final BatchStreamTask delegate;
+
+    private int maxSize = 100;
+    private long maxBytes = -1; //-1 = unlimited
+    private long lingerMillis = 1000;
+
+    private TaskName taskName;
+
+    //only accessed by the container thread:
+    private final List<IncomingMessageEnvelope> batch = new ArrayList<>();
+    private final List<IncomingMessageEnvelope> readOnlyBatch = Collections.unmodifiableList(batch); //for the delegate
+    private final Set<SystemStreamPartition> pendingPartitions = new HashSet<>();
+    private final Map<SystemStreamPartition, String> processedOffsets = new HashMap<>();
+    private long batchBytes;
+    private long batchStartMillis;
+    private MessageCollector collector;
+    private TaskCoordinator coordinator;
+
+    public BatchingStreamTask(BatchStreamTask delegate) {
+        Assert.notNull(delegate, "BatchStreamTask cannot be null.");
+        this.delegate = delegate;
+    }
+
+    public BatchStreamTask getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public void init(Config config, TaskContext context) throws Exception {
+
+        this.maxSize = config.getInt(BATCH_SIZE, maxSize);
+        this.maxBytes = config.getLong(BATCH_BYTES, maxBytes);
+        this.lingerMillis = config.getLong(BATCH_LINGER_MS, lingerMillis);
+        Assert.isTrue(maxSize > 0, BATCH_SIZE + " must be a positive integer (greater than zero).");
+        Assert.isTrue(lingerMillis >= 0, BATCH_LINGER_MS + " must be greater than or equal to zero.");
+
+        this.taskName = context.getTaskName();
+        BufferingCheckpointManager.register(taskName, this);
+
+        if (delegate instanceof InitableTask) {
+            ((InitableTask) delegate).init(config, context);
+        }
+    }
+
+    @Override
+    public void process(IncomingMessageEnvelope envelope, MessageCollector collector, TaskCoordinator coordinator)
+        throws Exception {
+
+        this.collector = collector;
+        this.coordinator = coordinator;
+
+        long now = System.currentTimeMillis();
+        if (batch.isEmpty()) {
+            batchStartMillis = now;
+        }
+
+        batch.add(envelope);
+        pendingPartitions.add(envelope.getSystemStreamPartition());
+        if (maxBytes > 0) {
+            batchBytes += getSize(envelope.getKey()) + getSize(envelope.getMessage());
+        }
+
+        if (batch.size() >= maxSize || (maxBytes > 0 && batchBytes >= maxBytes) ||
+            now - batchStartMillis >= lingerMillis) {
+            flush();
+        }
+    }
+
+    @Override
+    public void window(MessageCollector collector, TaskCoordinator coordinator) throws Exception {
+
+        this.collector = collector;
+        this.coordinator = coordinator;
+
+        if (!batch.isEmpty() && System.currentTimeMillis() - batchStartMillis >= lingerMillis) {
+            flush();
+        }
+
+        if (delegate instanceof WindowableTask) {
+            ((WindowableTask) delegate).window(collector, coordinator);
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        try {
+            flush();
+        } finally {
+            if (taskName != null) {
+                BufferingCheckpointManager.unregister(taskName, this);
+            }
+            if (delegate instanceof ClosableTask) {
+                ((ClosableTask) delegate).close();
+            }
+        }
+    }
+
+    /**
+     * Processes the pending batch (if any) immediately.
+     *
+     * @throws Exception if the delegate task fails to process the batch
+     */
+    @Override
+    public void flush() throws Exception {
+
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        int size = batch.size();
+
+        delegate.processBatch(readOnlyBatch, collector, coordinator);
+
+        for (IncomingMessageEnvelope envelope : batch) {
+            processedOffsets.put(envelope.getSystemStreamPartition(), envelope.getOffset());
+        }
+        batch.clear();
+        pendingPartitions.clear();
+        batchBytes = 0;
+
+        log.trace("Task {} processed batch of {} messages in {} ms.", taskName, size,
+            System.currentTimeMillis() - start);
+    }
+
+    public int getPendingCount() {
+        return batch.size();
+    }
+
+    @Override
+    public Checkpoint getCommittableCheckpoint(Checkpoint checkpoint, Checkpoint previous) {
+        return BufferingCheckpointManager.rewind(checkpoint, previous, pendingPartitions, processedOffsets);
+    }
+
+    protected long getSize(Object o) {
+        if (o instanceof byte[]) {
+            return ((byte[]) o).length;
+        }
+        if (o instanceof ByteBuffer) {
+            return ((ByteBuffer) o).remaining();
+        }
+        if (o instanceof String) {
+            return ((String) o).length(); //close enough, and avoids encoding every message
+        }
+        return 0; //deserialized objects don't have a known size
+    }
+}
@@ -0,0 +1,123 @@
+package com.stormpath.spring.boot.samza;
+
+import org.apache.samza.checkpoint.Checkpoint;
+import org.apache.samza.checkpoint.CheckpointManager;
+import org.apache.samza.container.TaskName;
+import org.apache.samza.system.SystemStreamPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A {@link CheckpointManager} that ensures checkpoints never advance past messages a {@link BufferingStreamTask} has
+ * not finished processing yet.  All other calls are passed to the delegate unchanged.
+ */
+public class BufferingCheckpointManager implements CheckpointManager {
+
+    private static final Logger log = LoggerFactory.getLogger(BufferingCheckpointManager.class);
+
+    //tasks are created by Samza, so they find their checkpoint manager by task name:
+    private static final ConcurrentMap<TaskName, BufferingStreamTask> TASKS = new ConcurrentHashMap<>();
+
+    private final CheckpointManager delegate;
+    private final ConcurrentMap<TaskName, Checkpoint> lastCheckpoints = new ConcurrentHashMap<>();
+
+    public BufferingCheckpointManager(CheckpointManager delegate) {
+        Assert.notNull(delegate, "Delegate CheckpointManager cannot be null.");
+        this.delegate = delegate;
+    }
+
+    static void register(TaskName taskName, BufferingStreamTask task) {
+        TASKS.put(taskName, task);
+    }
+
+    static void unregister(TaskName taskName, BufferingStreamTask task) {
+        TASKS.remove(taskName, task);
+    }
+
+    /**
+     * Replaces the offsets of the pending partitions in the specified checkpoint with their last fully processed
+     * offset, or with their offset in the previous checkpoint if none has been processed yet.
+     */
+    static Checkpoint rewind(Checkpoint checkpoint, Checkpoint previous, Set<SystemStreamPartition> pendingPartitions,
+                             Map<SystemStreamPartition, String> processedOffsets) {
+
+        if (pendingPartitions.isEmpty()) {
+            return checkpoint;
+        }
+
+        Map<SystemStreamPartition, String> offsets = new HashMap<>(checkpoint.getOffsets());
+        for (SystemStreamPartition ssp : pendingPartitions) {
+            String offset = processedOffsets.get(ssp);
+            if (offset == null && previous != null) {
+                offset = previous.getOffsets().get(ssp);
+            }
+            if (offset != null) {
+                offsets.put(ssp, offset);
+            } else {
+                log.debug("No message from {} has been processed yet, omitting it from the checkpoint.", ssp);
+                offsets.remove(ssp);
+            }
+        }
+        return new Checkpoint(offsets);
+    }
+
+    public CheckpointManager getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public void start() {
+        delegate.start();
+    }
+
+    @Override
+    public void register(TaskName taskName) {
+        delegate.register(taskName);
+    }
+
+    @Override
+    public void writeCheckpoint(TaskName taskName, Checkpoint checkpoint) {
+        BufferingStreamTask task = TASKS.get(taskName);
+        if (task != null) {
+            checkpoint = task.getCommittableCheckpoint(checkpoint, lastCheckpoints.get(taskName));
+        }
+        delegate.writeCheckpoint(taskName, checkpoint);
+        lastCheckpoints.put(taskName, checkpoint);
+    }
+
+    @Override
+    public Checkpoint readLastCheckpoint(TaskName taskName) {
+        Checkpoint checkpoint = delegate.readLastCheckpoint(taskName);
+        if (checkpoint != null) {
+            lastCheckpoints.put(taskName, checkpoint);
+        }
+        return checkpoint;
+    }
+
+    @Override
+    public Map<TaskName, Integer> readChangeLogPartitionMapping() {
+        return delegate.readChangeLogPartitionMapping();
+    }
+
+    @Override
+    public void writeChangeLogPartitionMapping(Map<TaskName, Integer> mapping) {
+        delegate.writeChangeLogPartitionMapping(mapping);
+    }
+
+    @Override
+    public void stop() {
+        delegate.stop();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + delegate + "]";
+    }
+}
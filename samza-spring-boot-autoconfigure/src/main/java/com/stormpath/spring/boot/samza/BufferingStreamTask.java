@@ -0,0 +1,30 @@
+package com.stormpath.spring.boot.samza;
+
+import org.apache.samza.checkpoint.Checkpoint;
+import org.apache.samza.task.StreamTask;
+
+/**
+ * A {@link StreamTask} that may return from {@link #process} before an envelope has been fully processed, e.g.
+ * because it is buffered in a batch or processed asynchronously.  {@link BufferingCheckpointManager} uses
+ * {@link #getCommittableCheckpoint} so checkpoints never skip such envelopes.
+ */
+public interface BufferingStreamTask extends StreamTask {
+
+    /**
+     * Returns the checkpoint that can safely be written for this task: the offsets of partitions with unfinished
+     * envelopes are replaced by the last offset that was fully processed, or by the offset in the previous checkpoint
+     * if no envelope of that partition has been fully processed yet.
+     *
+     * @param checkpoint the checkpoint Samza wants to write, containing the last offsets passed to {@link #process}
+     * @param previous   the last checkpoint read or written for this task, may be null
+     * @return the checkpoint to write
+     */
+    Checkpoint getCommittableCheckpoint(Checkpoint checkpoint, Checkpoint previous);
+
+    /**
+     * Finishes processing all envelopes passed to {@link #process} so far.
+     *
+     * @throws Exception if an envelope could not be processed
+     */
+    void flush() throws Exception;
+}
@@ -0,0 +1,100 @@
+package com.stormpath.spring.boot.samza;
+
+import org.apache.samza.container.RunLoop;
+import org.apache.samza.task.ReadableCoordinator;
+import org.apache.samza.task.TaskCoordinator;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps a container's {@link RunLoop} from committing while its tasks still have messages in flight on the task
+ * executor (see {@link ExecutorStreamTask}).  {@code TaskInstance.commit} flushes stores and producers before it
+ * writes the checkpoint, so no {@code process} call may run on a pool thread while it does.
+ * <p>
+ * Samza has no hook that runs before a commit, but the run loop only commits right after it has called a task on the
+ * container thread, or once {@code task.commit.ms} has elapsed.  A {@link CommitBarrierStreamTask} calls
+ * {@link #afterCall} after every such call: if a commit is due or was requested, it waits until every message in
+ * flight has been processed; otherwise, if messages are in flight, it postpones the run loop's interval commit so that
+ * it can't start before the next call.  While the container is idle with messages in flight, interval commits
+ * therefore wait for the next message (or the next window if {@code task.window.ms} is set).
+ */
+public class CommitBarrier {
+
+    private final RunLoop runLoop;
+
+    //only accessed by the container thread:
+    private final List<AsyncStreamTaskAdapter> tasks = new ArrayList<>();
+    private long lastCommitMillis; //the run loop's last interval commit, kept here while it is postponed
+    private boolean postponed = false;
+
+    public CommitBarrier(RunLoop runLoop) {
+        Assert.notNull(runLoop, "RunLoop cannot be null.");
+        this.runLoop = runLoop;
+    }
+
+    /**
+     * Registers a task whose messages are processed on the task executor.
+     *
+     * @param task the task, processing messages through an {@link ExecutorStreamTask}
+     */
+    public void register(AsyncStreamTaskAdapter task) {
+        Assert.notNull(task, "task cannot be null.");
+        tasks.add(task);
+    }
+
+    /**
+     * Called on the container thread after a task's {@code process} or {@code window} call returns, before the run
+     * loop may commit.
+     *
+     * @param coordinator the coordinator passed to the call
+     * @throws Exception if waiting for a task's in-flight messages failed
+     */
+    public void afterCall(TaskCoordinator coordinator) throws Exception {
+
+        long commitMillis = runLoop.commitMs();
+        if (!postponed) {
+            //a direct call to the Scala-generated getter: if a Samza upgrade changes its name, compilation fails:
+            lastCommitMillis = runLoop.org$apache$samza$container$RunLoop$$lastCommitMs();
+        }
+
+        boolean due = commitMillis >= 0 && lastCommitMillis + commitMillis < System.currentTimeMillis();
+        if (due || isCommitRequested(coordinator)) {
+            for (AsyncStreamTaskAdapter task : tasks) {
+                task.flush();
+            }
+        }
+
+        if (commitMillis < 0) { //interval commits are disabled
+            return;
+        }
+
+        if (isInFlight()) {
+            if (!postponed) {
+                runLoop.org$apache$samza$container$RunLoop$$lastCommitMs_$eq(Long.MAX_VALUE - commitMillis);
+                postponed = true;
+            }
+        } else if (postponed) {
+            runLoop.org$apache$samza$container$RunLoop$$lastCommitMs_$eq(lastCommitMillis);
+            postponed = false;
+        }
+    }
+
+    private boolean isInFlight() {
+        for (AsyncStreamTaskAdapter task : tasks) {
+            if (task.getInFlightCount() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isCommitRequested(TaskCoordinator coordinator) {
+        if (coordinator instanceof ReadableCoordinator) {
+            ReadableCoordinator c = (ReadableCoordinator) coordinator;
+            return c.requestedCommitTask() || c.requestedCommitAll();
+        }
+        return false;
+    }
+}
@@ -0,0 +1,68 @@
+package com.stormpath.spring.boot.samza;
+
+import org.apache.samza.checkpoint.Checkpoint;
+import org.apache.samza.config.Config;
+import org.apache.samza.system.IncomingMessageEnvelope;
+import org.apache.samza.task.ClosableTask;
+import org.apache.samza.task.InitableTask;
+import org.apache.samza.task.MessageCollector;
+import org.apache.samza.task.TaskContext;
+import org.apache.samza.task.TaskCoordinator;
+import org.apache.samza.task.WindowableTask;
+import org.springframework.util.Assert;
+
+/**
+ * Calls a {@link CommitBarrier} after each {@code process} and {@code window} call of a task whose messages are
+ * processed on the task executor.  Only installed by {@link ConfigTimeStreamTask} when a task executor is set, so tasks
+ * called on the container thread don't pay for the barrier.
+ */
+public class CommitBarrierStreamTask implements BufferingStreamTask, InitableTask, WindowableTask, ClosableTask {
+
+    private final AsyncStreamTaskAdapter delegate;
+    private final CommitBarrier commitBarrier;
+
+    public CommitBarrierStreamTask(AsyncStreamTaskAdapter delegate, CommitBarrier commitBarrier) {
+        Assert.notNull(delegate, "AsyncStreamTaskAdapter cannot be null.");
+        Assert.notNull(commitBarrier, "CommitBarrier cannot be null.");
+        this.delegate = delegate;
+        this.commitBarrier = commitBarrier;
+        commitBarrier.register(delegate);
+    }
+
+    public AsyncStreamTaskAdapter getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public void init(Config config, TaskContext context) throws Exception {
+        delegate.init(config, context);
+    }
+
+    @Override
+    public void process(IncomingMessageEnvelope envelope, MessageCollector collector, TaskCoordinator coordinator)
+        throws Exception {
+        delegate.process(envelope, collector, coordinator);
+        commitBarrier.afterCall(coordinator);
+    }
+
+    @Override
+    public void window(MessageCollector collector, TaskCoordinator coordinator) throws Exception {
+        delegate.window(collector, coordinator);
+        commitBarrier.afterCall(coordinator);
+    }
+
+    @Override
+    public Checkpoint getCommittableCheckpoint(Checkpoint checkpoint, Checkpoint previous) {
+        return delegate.getCommittableCheckpoint(checkpoint, previous);
+    }
+
+    @Override
+    public void flush() throws Exception {
+        delegate.flush();
+    }
+
+    @Override
+    public void close() throws Exception {
+        delegate.close();
+    }
+}
@@ -1,5 +1,7 @@
 package com.stormpath.spring.boot.samza;
 
+import com.stormpath.samza.task.AsyncStreamTask;
+import com.stormpath.samza.task.BatchStreamTask;
 import org.apache.samza.config.Config;
 import org.apache.samza.system.IncomingMessageEnvelope;
 import org.apache.samza.task.*;
@@ -8,34 +10,124 @@ import org.springframework.beans.factory.BeanInitializationException;
 import org.springframework.context.ApplicationContext;
 import org.springframework.util.Assert;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
 public class ConfigTimeStreamTask implements StreamTask, InitableTask, WindowableTask, ClosableTask {
 
+    public static final String METRICS_GROUP = ConfigTimeStreamTask.class.getName();
+
     private static ApplicationContext APPCTX;
 
-    private StreamTask _delegate;
+    private static final WindowableTask NOOP_WINDOW = (collector, coordinator) -> {};
+    private static final ClosableTask NOOP_CLOSE = () -> {};
 
-    private StreamTask getDelegate() {
-        if (_delegate == null) {
-            try {
-                Assert.notNull(APPCTX, "static ApplicationContext cannot be null.");
-                _delegate = APPCTX.getBean(StreamTask.class);
-            } catch (BeansException e) {
-                String msg = "Unable to acquire Samza StreamTask bean.  If you enable the " +
-                    "Samza Spring Boot Plugin you must declare a prototype bean that implements the " +
-                    StreamTask.class.getCanonicalName() + " interface.  It MUST be prototype-scoped.";
-                throw new BeanInitializationException(msg, e);
+    //resolved once in init so the per-message calls below don't need null or instanceof checks.  The delegate kind
+    //(plain, batch or async, see createDelegate, wrapped for the task executor) is the same for every task of the
+    //container, so the delegate call sites only see one class and stay monomorphic.  Not final, since Samza creates
+    //the task before it is initialized:
+    private StreamTask delegate;
+    private WindowableTask windowable = NOOP_WINDOW;
+    private ClosableTask closable = NOOP_CLOSE;
+
+    private volatile CompletableFuture<StreamTask> delegateFuture; //set if the delegate is created ahead of init
+    private long delegateCreationMillis;
+    private Executor taskExecutor; //if set, a blocking delegate's process calls run on this executor
+    private CommitBarrier commitBarrier;
+
+    private StreamTask createDelegate() {
+        long start = System.currentTimeMillis();
+        try {
+            Assert.notNull(APPCTX, "static ApplicationContext cannot be null.");
+            StreamTask task;
+            if (APPCTX.getBeanNamesForType(BatchStreamTask.class).length > 0) {
+                task = new BatchingStreamTask(APPCTX.getBean(BatchStreamTask.class));
+            } else if (APPCTX.getBeanNamesForType(AsyncStreamTask.class).length > 0) {
+                task = new AsyncStreamTaskAdapter(APPCTX.getBean(AsyncStreamTask.class));
+            } else {
+                task = APPCTX.getBean(StreamTask.class);
             }
+            delegateCreationMillis = System.currentTimeMillis() - start;
+            return task;
+        } catch (BeansException e) {
+            String msg = "Unable to acquire Samza StreamTask bean.  If you enable the " +
+                "Samza Spring Boot Plugin you must declare a prototype bean that implements the " +
+                StreamTask.class.getCanonicalName() + ", " + BatchStreamTask.class.getCanonicalName() + " or " +
+                AsyncStreamTask.class.getCanonicalName() + " interface.  It MUST be prototype-scoped.";
+            throw new BeanInitializationException(msg, e);
         }
-        return _delegate;
     }
 
     public static void setApplicationContext(ApplicationContext appCtx) {
         ConfigTimeStreamTask.APPCTX = appCtx;
     }
 
+    /**
+     * Starts creating the delegate StreamTask bean on the specified executor so that task beans can be created
+     * concurrently (and while stores are restored) instead of one at a time during {@link #init(Config, TaskContext)}.
+     *
+     * @param executor the executor used to create the delegate StreamTask bean
+     * @return the future delegate
+     */
+    public CompletableFuture<StreamTask> prepare(Executor executor) {
+        Assert.notNull(executor, "Executor cannot be null.");
+        CompletableFuture<StreamTask> future = CompletableFuture.supplyAsync(this::createDelegate, executor);
+        this.delegateFuture = future;
+        return future;
+    }
+
+    /**
+     * Sets the executor that runs the delegate's {@code process} calls.  Only applies to a plain (blocking)
+     * {@link StreamTask} delegate, and must be called before {@link #init(Config, TaskContext)}.
+     *
+     * @param taskExecutor the executor, or {@code null} to call the delegate on the container thread
+     */
+    public void setTaskExecutor(Executor taskExecutor) {
+        this.taskExecutor = taskExecutor;
+    }
+
+    /**
+     * Sets the barrier that keeps the container from committing while the delegate's messages are in flight on the
+     * task executor.  Must be called before {@link #init(Config, TaskContext)}.
+     *
+     * @param commitBarrier the container's commit barrier, or {@code null} if the container has no task executor
+     */
+    public void setCommitBarrier(CommitBarrier commitBarrier) {
+        this.commitBarrier = commitBarrier;
+    }
+
     @Override
     public void init(Config config, TaskContext context) throws Exception {
-        StreamTask task = getDelegate();
+
+        StreamTask task;
+        CompletableFuture<StreamTask> future = this.delegateFuture;
+        if (future != null) {
+            try {
+                task = future.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof Exception ? (Exception) cause : e;
+            }
+        } else {
+            task = createDelegate();
+        }
+
+        if (taskExecutor != null && !(task instanceof BufferingStreamTask)) {
+            AsyncStreamTaskAdapter adapter = new AsyncStreamTaskAdapter(new ExecutorStreamTask(task, taskExecutor));
+            task = commitBarrier != null ? new CommitBarrierStreamTask(adapter, commitBarrier) : adapter;
+        }
+
+        this.delegate = task;
+        if (task instanceof WindowableTask) {
+            this.windowable = (WindowableTask) task;
+        }
+        if (task instanceof ClosableTask) {
+            this.closable = (ClosableTask) task;
+        }
+
+        context.getMetricsRegistry().newGauge(METRICS_GROUP, "delegate-creation-ms", delegateCreationMillis);
+
         if (task instanceof InitableTask) {
             ((InitableTask) task).init(config, context);
         }
@@ -43,23 +135,29 @@ public class ConfigTimeStreamTask implements StreamTask, InitableTask, Windowabl
 
     @Override
     public void process(IncomingMessageEnvelope envelope, MessageCollector collector, TaskCoordinator coordinator) throws Exception {
-        getDelegate().process(envelope, collector, coordinator);
-
+        delegate.process(envelope, collector, coordinator);
     }
 
     @Override
     public void window(MessageCollector collector, TaskCoordinator coordinator) throws Exception {
-        StreamTask task = getDelegate();
-        if (task instanceof WindowableTask) {
-            ((WindowableTask) task).window(collector, coordinator);
+        windowable.window(collector, coordinator);
+    }
+
+    /**
+     * Finishes processing any messages the delegate task has buffered, e.g. the pending batch of a
+     * {@link BatchStreamTask} or the in-flight messages of an {@link AsyncStreamTask}.
+     *
+     * @throws Exception if the delegate task fails to process them
+     */
+    public void flush() throws Exception {
+        if (delegate instanceof BufferingStreamTask) {
+            ((BufferingStreamTask) delegate).flush();
         }
     }
 
     @Override
     public void close() throws Exception {
-        StreamTask task = getDelegate();
-        if (task instanceof ClosableTask) {
-            ((ClosableTask) task).close();
-        }
+        //a no-op if init was never called, rather than creating a task bean just to close it:
+        closable.close();
     }
 }
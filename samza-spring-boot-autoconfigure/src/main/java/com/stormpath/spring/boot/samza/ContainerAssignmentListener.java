@@ -0,0 +1,25 @@
+package com.stormpath.spring.boot.samza;
+
+import org.apache.samza.job.model.ContainerModel;
+import org.apache.samza.metrics.MetricsRegistry;
+
+/**
+ * Notified whenever a SamzaContainer is created in this JVM, e.g. to remember which tasks ran on this host.
+ * All beans of this type are notified.
+ */
+public interface ContainerAssignmentListener {
+
+    /**
+     * @param containerModel the model of the container that was created
+     */
+    void containerAssigned(ContainerModel containerModel);
+
+    /**
+     * Called once the container has been created, e.g. to publish metrics with the container's metrics.
+     *
+     * @param containerModel the model of the container that was created
+     * @param registry       the container's metrics registry
+     */
+    default void containerCreated(ContainerModel containerModel, MetricsRegistry registry) {
+    }
+}
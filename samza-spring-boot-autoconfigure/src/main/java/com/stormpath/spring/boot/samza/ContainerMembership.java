@@ -0,0 +1,32 @@
+package com.stormpath.spring.boot.samza;
+
+import java.util.List;
+
+/**
+ * The live members (containers) of a job, e.g. backed by ZooKeeper.  If a bean of this type is defined, the job's
+ * JobModel follows the number of live members and this container is restarted when its assignment changes.
+ */
+public interface ContainerMembership {
+
+    /**
+     * @return the id of this JVM's member
+     */
+    int getMemberId();
+
+    /**
+     * @return the ids of all live members, sorted ascending
+     */
+    List<Integer> getMemberIds();
+
+    void addListener(Listener listener);
+
+    interface Listener {
+
+        /**
+         * Called whenever a member joined or left the job.
+         *
+         * @param memberIds the ids of all live members, sorted ascending
+         */
+        void membersChanged(List<Integer> memberIds);
+    }
+}
@@ -0,0 +1,258 @@
+package com.stormpath.spring.boot.samza;
+
+import org.apache.samza.job.ApplicationStatus;
+import org.apache.samza.job.StreamJob;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.context.Lifecycle;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * A {@link StreamJob} that only creates its delegate job when it is started, so that expensive work the delegate
+ * depends on (e.g. building the JobModel in the background) can overlap with the rest of application context
+ * initialization.
+ * <p>
+ * If a {@link #setStartExecutor(Executor) startExecutor} is set, the delegate is created and started on it and
+ * {@link #start()} only waits {@link #setStartWaitMillis(long) startWaitMillis} for that, so the application context
+ * doesn't wait for the delegate's dependencies either.
+ */
+public class DeferredStreamJob implements StreamJob, InitializingBean, ApplicationContextAware, SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(DeferredStreamJob.class);
+
+    private final Supplier<? extends StreamJob> supplier;
+    private volatile StreamJob delegate;
+    private volatile boolean startRequested = false;
+    private volatile Throwable startFailure;
+
+    private int phase = 0;
+    private Executor startExecutor = null; //if null, the delegate is created and started by the calling thread
+    private long startWaitMillis = 2000;
+
+    private ApplicationContext applicationContext;
+
+    public DeferredStreamJob(Supplier<? extends StreamJob> supplier) {
+        Assert.notNull(supplier, "StreamJob supplier cannot be null.");
+        this.supplier = supplier;
+    }
+
+    public void setPhase(int phase) {
+        this.phase = phase;
+    }
+
+    public StreamJob getDelegate() {
+        return delegate;
+    }
+
+    public Executor getStartExecutor() {
+        return startExecutor;
+    }
+
+    public void setStartExecutor(Executor startExecutor) {
+        this.startExecutor = startExecutor;
+    }
+
+    public long getStartWaitMillis() {
+        return startWaitMillis;
+    }
+
+    /**
+     * Sets how long {@link #start()} waits for the delegate to be created and started if a
+     * {@link #setStartExecutor(Executor) startExecutor} is set.
+     *
+     * @param startWaitMillis the time to wait for the delegate to start
+     */
+    public void setStartWaitMillis(long startWaitMillis) {
+        this.startWaitMillis = startWaitMillis;
+    }
+
+    @Override
+    public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
+        this.applicationContext = applicationContext;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        Assert.notNull(applicationContext, "applicationContext cannot be null.");
+        Assert.isTrue(startWaitMillis >= 0, "startWaitMillis must be greater than or equal to zero.");
+    }
+
+    protected synchronized StreamJob getOrCreateDelegate() {
+
+        if (delegate != null) {
+            return delegate;
+        }
+
+        long start = System.currentTimeMillis();
+
+        StreamJob job = supplier.get();
+        Assert.notNull(job, "StreamJob supplier cannot return null.");
+
+        //the delegate isn't a bean, so it is initialized here:
+        if (job instanceof ApplicationContextAware) {
+            ((ApplicationContextAware) job).setApplicationContext(applicationContext);
+        }
+        if (job instanceof InitializingBean) {
+            try {
+                ((InitializingBean) job).afterPropertiesSet();
+            } catch (Exception e) {
+                throw new IllegalStateException("Unable to initialize deferred StreamJob: " + e.getMessage(), e);
+            }
+        }
+
+        log.info("Created deferred Samza job in {} ms.", System.currentTimeMillis() - start);
+
+        this.delegate = job;
+        return job;
+    }
+
+    /**
+     * Stops the current delegate (if any) and starts a new one obtained from the supplier.
+     */
+    protected synchronized void restart() {
+        stop();
+        this.delegate = null;
+        start();
+    }
+
+    @Override
+    public boolean isAutoStartup() {
+        return true;
+    }
+
+    @Override
+    public void start() {
+
+        startRequested = true;
+        startFailure = null;
+
+        Executor executor = this.startExecutor;
+        if (executor == null || delegate != null) {
+            startDelegate();
+            return;
+        }
+
+        CompletableFuture<Void> started = CompletableFuture.runAsync(this::startDelegate, executor);
+        started.whenComplete((result, e) -> {
+            if (e != null) { //reported as UnsuccessfulFinish since start() may have returned already
+                Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+                startFailure = cause;
+                log.error("Unable to start deferred Samza job: " + cause.getMessage(), cause);
+            }
+        });
+
+        try {
+            started.get(Math.max(startWaitMillis, 1), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            //e.g. the JobModel is still being built - not a failure:
+            log.info("Deferred Samza job has not started within {} milliseconds and will continue starting in the " +
+                "background.", startWaitMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while starting deferred Samza job.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw new IllegalStateException("Unable to start deferred Samza job: " + cause.getMessage(), cause);
+        }
+    }
+
+    private void startDelegate() {
+        StreamJob job = getOrCreateDelegate();
+        if (!startRequested) { //stopped while the delegate was being created
+            return;
+        }
+        if (job instanceof Lifecycle) {
+            ((Lifecycle) job).start();
+        } else {
+            job.submit();
+        }
+    }
+
+    @Override
+    public void stop(Runnable runnable) {
+        try {
+            stop();
+        } finally {
+            runnable.run();
+        }
+    }
+
+    @Override
+    public void stop() {
+        startRequested = false;
+        StreamJob job = this.delegate;
+        if (job instanceof Lifecycle) {
+            ((Lifecycle) job).stop();
+        } else if (job != null) {
+            job.kill();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        StreamJob job = this.delegate;
+        if (job instanceof Lifecycle) {
+            return ((Lifecycle) job).isRunning();
+        }
+        return job != null && job.getStatus() == ApplicationStatus.Running;
+    }
+
+    @Override
+    public int getPhase() {
+        return this.phase;
+    }
+
+    @Override
+    public StreamJob submit() {
+        start();
+        return this;
+    }
+
+    @Override
+    public StreamJob kill() {
+        StreamJob job = this.delegate;
+        if (job != null) {
+            job.kill();
+        }
+        return this;
+    }
+
+    @Override
+    public ApplicationStatus waitForFinish(long timeoutMs) {
+        StreamJob job = this.delegate;
+        return job != null ? job.waitForFinish(timeoutMs) : ApplicationStatus.New;
+    }
+
+    @Override
+    public ApplicationStatus waitForStatus(ApplicationStatus status, long timeoutMs) {
+        return getOrCreateDelegate().waitForStatus(status, timeoutMs);
+    }
+
+    @Override
+    public ApplicationStatus getStatus() {
+        StreamJob job = this.delegate;
+        if (job == null) {
+            return startFailure != null ? ApplicationStatus.UnsuccessfulFinish : ApplicationStatus.New;
+        }
+        return job.getStatus();
+    }
+
+    @Override
+    public String toString() {
+        StreamJob job = this.delegate;
+        return getClass().getSimpleName() + "[" + (job != null ? job : "not yet created") + "]";
+    }
+}
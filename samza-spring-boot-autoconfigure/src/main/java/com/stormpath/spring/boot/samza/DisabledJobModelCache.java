@@ -0,0 +1,16 @@
+package com.stormpath.spring.boot.samza;
+
+import org.apache.samza.job.model.JobModel;
+
+public class DisabledJobModelCache implements JobModelCache {
+
+    @Override
+    public JobModel get(String key) {
+        return null;
+    }
+
+    @Override
+    public void put(String key, JobModel jobModel) {
+        //no-op
+    }
+}
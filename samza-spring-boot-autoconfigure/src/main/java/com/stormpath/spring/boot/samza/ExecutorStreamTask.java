@@ -0,0 +1,158 @@
+package com.stormpath.spring.boot.samza;
+
+import com.stormpath.samza.task.AsyncStreamTask;
+import org.apache.samza.config.Config;
+import org.apache.samza.container.TaskName;
+import org.apache.samza.metrics.MetricsRegistry;
+import org.apache.samza.system.IncomingMessageEnvelope;
+import org.apache.samza.system.SystemStreamPartition;
+import org.apache.samza.task.ClosableTask;
+import org.apache.samza.task.InitableTask;
+import org.apache.samza.task.MessageCollector;
+import org.apache.samza.task.StreamTask;
+import org.apache.samza.task.TaskContext;
+import org.apache.samza.task.TaskCoordinator;
+import org.apache.samza.task.WindowableTask;
+import org.springframework.util.Assert;
+
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Runs a blocking {@link StreamTask}'s {@code process} calls on an {@link Executor} so that the container thread can
+ * move on to other tasks.  Calls are chained, so the task still processes its messages one at a time and in order;
+ * {@code window} and {@code close} wait for all previously submitted messages before they are called.
+ * <p>
+ * Meant to be run by an {@link AsyncStreamTaskAdapter}, which limits the number of queued messages and ensures
+ * checkpoints only include processed messages, and a {@link CommitBarrier}, which keeps the container from committing
+ * while messages are in flight.
+ * <p>
+ * Commit and shutdown requests made on a pool thread are forwarded to Samza by the container thread with the next
+ * message or window.  Stores are not thread-safe and are flushed by the container thread, so the task cannot use
+ * them: {@link TaskContext#getStore(String)} throws an {@link IllegalStateException}.
+ */
+public class ExecutorStreamTask implements AsyncStreamTask, InitableTask, WindowableTask, ClosableTask {
+
+    private final StreamTask delegate;
+    private final Executor executor;
+
+    private CompletableFuture<Void> last = CompletableFuture.completedFuture(null); //only used by the container thread
+
+    //requests made on pool threads, forwarded to Samza by the container thread:
+    private final Queue<Consumer<TaskCoordinator>> requests = new ConcurrentLinkedQueue<>();
+    private final TaskCoordinator poolCoordinator = new TaskCoordinator() {
+        @Override
+        public void commit(RequestScope scope) {
+            requests.add(c -> c.commit(scope));
+        }
+
+        @Override
+        public void shutdown(RequestScope scope) {
+            requests.add(c -> c.shutdown(scope));
+        }
+    };
+
+    public ExecutorStreamTask(StreamTask delegate, Executor executor) {
+        Assert.notNull(delegate, "StreamTask cannot be null.");
+        Assert.notNull(executor, "Executor cannot be null.");
+        this.delegate = delegate;
+        this.executor = executor;
+    }
+
+    public StreamTask getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public void init(Config config, TaskContext context) throws Exception {
+        if (delegate instanceof InitableTask) {
+            ((InitableTask) delegate).init(config, new StorelessTaskContext(context));
+        }
+    }
+
+    @Override
+    public CompletionStage<?> process(IncomingMessageEnvelope envelope, MessageCollector collector,
+                                      TaskCoordinator coordinator) throws Exception {
+        forwardRequests(coordinator);
+        last = last.thenRunAsync(() -> {
+            try {
+                delegate.process(envelope, collector, poolCoordinator);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+        return last;
+    }
+
+    @Override
+    public void window(MessageCollector collector, TaskCoordinator coordinator) throws Exception {
+        forwardRequests(coordinator);
+        if (delegate instanceof WindowableTask) {
+            try {
+                last.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof Exception ? (Exception) cause : e;
+            }
+            ((WindowableTask) delegate).window(collector, coordinator);
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        //failures have already been reported by process:
+        last.handle((result, e) -> null).join();
+        if (delegate instanceof ClosableTask) {
+            ((ClosableTask) delegate).close();
+        }
+    }
+
+    private void forwardRequests(TaskCoordinator coordinator) {
+        Consumer<TaskCoordinator> request;
+        while ((request = requests.poll()) != null) {
+            request.accept(coordinator);
+        }
+    }
+
+    private static class StorelessTaskContext implements TaskContext {
+
+        private final TaskContext context;
+
+        StorelessTaskContext(TaskContext context) {
+            this.context = context;
+        }
+
+        @Override
+        public MetricsRegistry getMetricsRegistry() {
+            return context.getMetricsRegistry();
+        }
+
+        @Override
+        public Set<SystemStreamPartition> getSystemStreamPartitions() {
+            return context.getSystemStreamPartitions();
+        }
+
+        @Override
+        public Object getStore(String name) {
+            throw new IllegalStateException("Task " + context.getTaskName() + " cannot use store '" + name + "': " +
+                "stores are not thread-safe, so tasks processing messages on the samza.job.executor cannot use " +
+                "them.  Set samza.job.executor to 'single' to use stores.");
+        }
+
+        @Override
+        public TaskName getTaskName() {
+            return context.getTaskName();
+        }
+
+        @Override
+        public void setStartingOffset(SystemStreamPartition ssp, String offset) {
+            context.setStartingOffset(ssp, offset);
+        }
+    }
+}
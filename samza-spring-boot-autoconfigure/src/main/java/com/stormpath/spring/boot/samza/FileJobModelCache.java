@@ -0,0 +1,50 @@
+package com.stormpath.spring.boot.samza;
+
+import org.springframework.util.Assert;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+public class FileJobModelCache extends AbstractJobModelCache {
+
+    private final File file;
+
+    public FileJobModelCache(File file) {
+        Assert.notNull(file, "File argument cannot be null.");
+        this.file = file;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    protected byte[] read() throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        return Files.readAllBytes(file.toPath());
+    }
+
+    @Override
+    protected void write(byte[] bytes) throws IOException {
+        Path path = file.getAbsoluteFile().toPath();
+        Files.createDirectories(path.getParent());
+        //write to a temp file first so a crash can't leave a partially written file behind:
+        Path tmp = Files.createTempFile(path.getParent(), file.getName(), ".tmp");
+        try {
+            Files.write(tmp, bytes);
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + file + "]";
+    }
+}
@@ -6,17 +6,29 @@ import org.apache.samza.config.Config;
 import org.apache.samza.metrics.MetricsRegistry;
 import org.springframework.util.Assert;
 
+/**
+ * Hands the same CheckpointManager to every Samza container in this JVM, each through its own view so that containers
+ * don't start or stop it for each other (see {@link SharedCheckpointManager}).
+ */
 public class FixedCheckpointManagerFactory implements CheckpointManagerFactory {
 
-    private final CheckpointManager checkpointManager;
+    private final SharedCheckpointManager checkpointManager;
 
     public FixedCheckpointManagerFactory(CheckpointManager checkpointManager) {
-        Assert.notNull(checkpointManager, "CheckpointManager cannot be null.");
+        this(new SharedCheckpointManager(checkpointManager));
+    }
+
+    public FixedCheckpointManagerFactory(SharedCheckpointManager checkpointManager) {
+        Assert.notNull(checkpointManager, "SharedCheckpointManager cannot be null.");
         this.checkpointManager = checkpointManager;
     }
 
+    public SharedCheckpointManager getSharedCheckpointManager() {
+        return checkpointManager;
+    }
+
     @Override
     public CheckpointManager getCheckpointManager(Config config, MetricsRegistry registry) {
-        return checkpointManager;
+        return checkpointManager.newContainerCheckpointManager();
     }
 }
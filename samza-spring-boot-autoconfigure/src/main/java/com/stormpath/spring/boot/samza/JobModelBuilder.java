@@ -0,0 +1,317 @@
+package com.stormpath.spring.boot.samza;
+
+import org.apache.samza.Partition;
+import org.apache.samza.SamzaException;
+import org.apache.samza.checkpoint.CheckpointManager;
+import org.apache.samza.config.Config;
+import org.apache.samza.config.SystemConfig$;
+import org.apache.samza.config.TaskConfig$;
+import org.apache.samza.container.TaskName;
+import org.apache.samza.container.grouper.stream.SystemStreamPartitionGrouper;
+import org.apache.samza.container.grouper.task.GroupByContainerCount;
+import org.apache.samza.coordinator.JobCoordinator$;
+import org.apache.samza.job.model.ContainerModel;
+import org.apache.samza.job.model.JobModel;
+import org.apache.samza.job.model.TaskModel;
+import org.apache.samza.system.SystemAdmin;
+import org.apache.samza.system.SystemFactory;
+import org.apache.samza.system.SystemStream;
+import org.apache.samza.system.SystemStreamMetadata;
+import org.apache.samza.system.SystemStreamPartition;
+import org.apache.samza.util.Util$;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+import scala.Option;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static scala.collection.JavaConversions.asJavaCollection;
+import static scala.collection.JavaConversions.asScalaSet;
+import static scala.collection.JavaConversions.setAsJavaSet;
+
+/**
+ * Builds the same {@link JobModel} as {@code JobCoordinator.buildJobModel(config, containerCount)}, but fetches the
+ * metadata of all input streams concurrently (one request per stream) instead of one system at a time, and logs the
+ * time spent in each step.  If a {@link JobModelCache} is configured, the JobModel computed by a previous startup is
+ * reused (skipping changelog partition assignment and grouping) when the config, input stream partitions and container
+ * count are all unchanged.
+ */
+public class JobModelBuilder {
+
+    private static final Logger log = LoggerFactory.getLogger(JobModelBuilder.class);
+
+    private final Config config;
+    private final int containerCount;
+    private int parallelism = 8;
+    private JobModelCache cache = null;
+
+    public JobModelBuilder(Config config, int containerCount) {
+        Assert.notNull(config, "Config argument cannot be null.");
+        Assert.isTrue(containerCount > 0, "containerCount must be a positive integer (greater than zero).");
+        this.config = config;
+        this.containerCount = containerCount;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        Assert.isTrue(parallelism > 0, "parallelism must be a positive integer (greater than zero).");
+        this.parallelism = parallelism;
+    }
+
+    public JobModelCache getCache() {
+        return cache;
+    }
+
+    public void setCache(JobModelCache cache) {
+        this.cache = cache;
+    }
+
+    public JobModel build() {
+
+        long start = System.currentTimeMillis();
+
+        Set<SystemStreamPartition> systemStreamPartitions = getInputStreamPartitions();
+
+        long metadataMillis = System.currentTimeMillis() - start;
+
+        String cacheKey = null;
+        if (cache != null) {
+            cacheKey = getCacheKey(systemStreamPartitions);
+            JobModel cached = getCached(cacheKey, systemStreamPartitions);
+            if (cached != null) {
+                log.info("Using cached JobModel with {} containers ({} ms, stream metadata: {} ms).",
+                    cached.getContainers().size(), System.currentTimeMillis() - start, metadataMillis);
+                return cached;
+            }
+        }
+
+        long groupStart = System.currentTimeMillis();
+
+        CheckpointManager checkpointManager = JobCoordinator$.MODULE$.getCheckpointManager(config);
+        SystemStreamPartitionGrouper grouper = JobCoordinator$.MODULE$.getSystemStreamPartitionGrouper(config);
+
+        Map<TaskName, Integer> previousChangelogMapping;
+        if (checkpointManager == null) {
+            previousChangelogMapping = new HashMap<>();
+        } else {
+            checkpointManager.start();
+            previousChangelogMapping = checkpointManager.readChangeLogPartitionMapping();
+        }
+
+        int maxChangelogPartitionId = -1;
+        for (Integer id : previousChangelogMapping.values()) {
+            maxChangelogPartitionId = Math.max(maxChangelogPartitionId, id);
+        }
+
+        Map<TaskName, Set<SystemStreamPartition>> groups = grouper.group(systemStreamPartitions);
+
+        Set<TaskModel> taskModels = new HashSet<>();
+        for (Map.Entry<TaskName, Set<SystemStreamPartition>> entry : groups.entrySet()) {
+            TaskName taskName = entry.getKey();
+            Integer changelogPartitionId = previousChangelogMapping.get(taskName);
+            if (changelogPartitionId == null) {
+                changelogPartitionId = ++maxChangelogPartitionId;
+                log.info("New task {} is being assigned changelog partition {}.", taskName, changelogPartitionId);
+            }
+            taskModels.add(new TaskModel(taskName, entry.getValue(), new Partition(changelogPartitionId)));
+        }
+
+        if (checkpointManager != null) {
+            Map<TaskName, Integer> changelogMapping = new HashMap<>();
+            for (TaskModel taskModel : taskModels) {
+                changelogMapping.put(taskModel.getTaskName(), taskModel.getChangelogPartition().getPartitionId());
+            }
+            changelogMapping.putAll(previousChangelogMapping);
+            log.debug("Saving task-to-changelog partition mapping: {}", changelogMapping);
+            checkpointManager.writeChangeLogPartitionMapping(changelogMapping);
+            checkpointManager.stop();
+        }
+
+        Map<Integer, ContainerModel> containers = new HashMap<>();
+        GroupByContainerCount containerGrouper = new GroupByContainerCount(containerCount);
+        for (ContainerModel container : asJavaCollection(containerGrouper.group(asScalaSet(taskModels).toSet()))) {
+            containers.put(container.getContainerId(), container);
+        }
+
+        JobModel jobModel = new JobModel(config, containers);
+
+        log.info("Built JobModel with {} tasks in {} containers in {} ms (stream metadata: {} ms, grouping: {} ms).",
+            taskModels.size(), containers.size(), System.currentTimeMillis() - start, metadataMillis,
+            System.currentTimeMillis() - groupStart);
+
+        if (cache != null) {
+            try {
+                cache.put(cacheKey, jobModel);
+            } catch (RuntimeException e) { //never fatal - the next startup just computes it again
+                log.warn("Unable to cache JobModel in " + cache + ": " + e.getMessage(), e);
+            }
+        }
+
+        return jobModel;
+    }
+
+    private JobModel getCached(String key, Set<SystemStreamPartition> systemStreamPartitions) {
+
+        JobModel cached;
+        try {
+            cached = cache.get(key);
+        } catch (RuntimeException e) {
+            log.warn("Unable to read cached JobModel from " + cache + ": " + e.getMessage(), e);
+            return null;
+        }
+
+        if (cached == null) {
+            return null;
+        }
+
+        //the key already covers all inputs, so only check the model is consistent with them:
+        Map<Integer, ContainerModel> containers = cached.getContainers();
+        Set<SystemStreamPartition> cachedPartitions = new HashSet<>();
+        for (ContainerModel container : containers.values()) {
+            for (TaskModel task : container.getTasks().values()) {
+                cachedPartitions.addAll(task.getSystemStreamPartitions());
+            }
+        }
+        if (containers.size() != containerCount || !cachedPartitions.equals(systemStreamPartitions) ||
+            !config.equals(cached.getConfig())) {
+            log.info("Ignoring cached JobModel that does not match the current config and input partitions.");
+            return null;
+        }
+
+        //use the live config instance:
+        return new JobModel(config, containers);
+    }
+
+    protected String getCacheKey(Set<SystemStreamPartition> systemStreamPartitions) {
+        List<String> lines = new ArrayList<>();
+        lines.add("containerCount=" + containerCount);
+        for (SystemStreamPartition ssp : new TreeSet<>(systemStreamPartitions)) {
+            lines.add(ssp.getSystem() + "." + ssp.getStream() + "." + ssp.getPartition().getPartitionId());
+        }
+        return digest(config, lines);
+    }
+
+    /**
+     * Returns the hex encoded SHA-256 digest of the specified config (in key order) followed by the specified lines,
+     * e.g. to identify the JobModel computed for that config.
+     *
+     * @param config the job config
+     * @param lines  what else the JobModel depends on, one value per line
+     * @return the hex encoded digest
+     */
+    public static String digest(Config config, List<String> lines) {
+
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, String> entry : new TreeMap<>(config).entrySet()) {
+            sb.append(entry.getKey()).append('=').append(entry.getValue()).append('\n');
+        }
+        for (String line : lines) {
+            sb.append(line).append('\n');
+        }
+
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(sb.toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    }
+
+    protected Set<SystemStreamPartition> getInputStreamPartitions() {
+
+        Set<SystemStream> inputStreams = setAsJavaSet(TaskConfig$.MODULE$.Config2Task(config).getInputStreams());
+
+        //one admin per system, shared by all of that system's streams:
+        Map<String, SystemAdmin> admins = new HashMap<>();
+        for (SystemStream stream : inputStreams) {
+            String systemName = stream.getSystem();
+            if (!admins.containsKey(systemName)) {
+                Option<String> factoryClassName =
+                    SystemConfig$.MODULE$.Config2System(config).getSystemFactory(systemName);
+                if (factoryClassName.isEmpty()) {
+                    throw new SamzaException("A stream uses system " + systemName +
+                        ", which is missing from the configuration.");
+                }
+                SystemFactory factory = Util$.MODULE$.getObj(factoryClassName.get());
+                admins.put(systemName, factory.getAdmin(systemName, config));
+            }
+        }
+
+        if (inputStreams.isEmpty()) {
+            return Collections.emptySet();
+        }
+
+        long start = System.currentTimeMillis();
+        int threads = Math.min(parallelism, inputStreams.size());
+        ExecutorService executor =
+            Executors.newFixedThreadPool(threads, new CustomizableThreadFactory("samza-metadata-"));
+
+        try {
+            List<CompletableFuture<Set<SystemStreamPartition>>> futures = new ArrayList<>(inputStreams.size());
+            for (SystemStream stream : inputStreams) {
+                SystemAdmin admin = admins.get(stream.getSystem());
+                futures.add(CompletableFuture.supplyAsync(() -> getPartitions(admin, stream), executor));
+            }
+
+            Set<SystemStreamPartition> partitions = new HashSet<>();
+            for (CompletableFuture<Set<SystemStreamPartition>> future : futures) {
+                partitions.addAll(future.join());
+            }
+
+            log.debug("Fetched metadata for {} input streams ({} partitions) in {} ms using {} threads.",
+                inputStreams.size(), partitions.size(), System.currentTimeMillis() - start, threads);
+
+            return partitions;
+
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new SamzaException("Unable to fetch input stream metadata: " + cause.getMessage(), cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Set<SystemStreamPartition> getPartitions(SystemAdmin admin, SystemStream stream) {
+
+        Map<String, SystemStreamMetadata> metadata =
+            admin.getSystemStreamMetadata(Collections.singleton(stream.getStream()));
+
+        SystemStreamMetadata streamMetadata = metadata != null ? metadata.get(stream.getStream()) : null;
+        if (streamMetadata == null) {
+            throw new SamzaException("No stream metadata available for input stream " + stream);
+        }
+
+        Set<SystemStreamPartition> partitions = new HashSet<>();
+        for (Partition partition : streamMetadata.getSystemStreamPartitionMetadata().keySet()) {
+            partitions.add(new SystemStreamPartition(stream, partition));
+        }
+        return partitions;
+    }
+}
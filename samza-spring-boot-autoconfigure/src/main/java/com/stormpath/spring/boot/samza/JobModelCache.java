@@ -0,0 +1,20 @@
+package com.stormpath.spring.boot.samza;
+
+import org.apache.samza.job.model.JobModel;
+
+/**
+ * Stores the last computed {@link JobModel} so it can be reused on the next startup if nothing it depends on (config,
+ * input stream partitions and container count) has changed.  The key is a digest of all of those inputs.
+ */
+public interface JobModelCache {
+
+    /**
+     * Returns the cached JobModel for the specified key or {@code null} if there is none.
+     *
+     * @param key the digest of the inputs used to compute the JobModel
+     * @return the cached JobModel for the specified key or {@code null} if there is none.
+     */
+    JobModel get(String key);
+
+    void put(String key, JobModel jobModel);
+}
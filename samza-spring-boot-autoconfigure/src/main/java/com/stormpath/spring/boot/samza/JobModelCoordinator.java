@@ -0,0 +1,24 @@
+package com.stormpath.spring.boot.samza;
+
+import org.apache.samza.config.Config;
+import org.apache.samza.job.model.JobModel;
+
+import java.util.function.Supplier;
+
+/**
+ * Shares the {@link JobModel} between the containers of a job so that it is only computed by one of them (e.g. an
+ * elected leader) instead of by every container on startup.
+ */
+public interface JobModelCoordinator {
+
+    /**
+     * Returns the JobModel for the specified config and number of containers: either the one published by the
+     * container that computed it, or one computed (and published) by calling {@code builder}.
+     *
+     * @param config         the job's config
+     * @param containerCount the number of containers
+     * @param builder        computes the JobModel if this container is responsible for it
+     * @return the JobModel for the specified config and number of containers
+     */
+    JobModel getJobModel(Config config, int containerCount, Supplier<JobModel> builder);
+}
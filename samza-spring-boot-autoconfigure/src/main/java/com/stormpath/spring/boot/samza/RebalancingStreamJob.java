@@ -0,0 +1,270 @@
+package com.stormpath.spring.boot.samza;
+
+import org.apache.samza.container.TaskName;
+import org.apache.samza.job.StreamJob;
+import org.apache.samza.job.model.ContainerModel;
+import org.apache.samza.job.model.JobModel;
+import org.apache.samza.job.model.TaskModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.IntFunction;
+
+/**
+ * A {@link StreamJob} that follows the live members of a job (see {@link ContainerMembership}): when members join or
+ * leave, the JobModel is rebuilt for the new member count and this member's container is only restarted if the tasks
+ * assigned to it changed.
+ * <p>
+ * A member's container index in the JobModel is its rank among the sorted live member ids, so the model stays dense
+ * even if the member ids have gaps.
+ * <p>
+ * The existing members only restart {@link #setRebalanceDelayMillis(long) rebalanceDelayMillis} after they noticed a
+ * member join, so a member joining a job with other live members doesn't start its container right away either: it
+ * rebalances after the same delay (extended by further membership changes, like theirs) and only then starts.  Until
+ * then the other members still run the tasks it takes over.  Members don't wait for each other though: a member
+ * taking over tasks may start them while the member giving them up is still shutting down its container, so tasks
+ * must tolerate being processed twice for a short time, as they must for Samza's at-least-once delivery.
+ */
+public class RebalancingStreamJob extends DeferredStreamJob implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(RebalancingStreamJob.class);
+
+    private final int memberId;
+    private final AtomicReference<Assignment> assignment;
+    private final IntFunction<JobModel> jobModelFactory;
+    private final ScheduledExecutorService scheduler;
+
+    private long rebalanceDelayMillis = 5000;
+
+    private volatile boolean active = false;
+    private boolean started = false; //guarded by this
+    private boolean joining = false; //guarded by this, true while the first start waits for the other members
+    private ScheduledFuture<?> pendingRebalance; //guarded by scheduler
+    private List<Integer> lastMemberIds; //guarded by scheduler
+    private volatile int restartCount = 0;
+
+    /**
+     * @param memberId        the id of this JVM's member
+     * @param memberIds       the live member ids {@code jobModel} was built for
+     * @param jobModel        the JobModel for {@code memberIds.size()} containers
+     * @param jobModelFactory builds the JobModel for a given number of containers
+     * @param jobFactory      creates the job running the container at the given index of the given JobModel
+     */
+    public RebalancingStreamJob(int memberId, List<Integer> memberIds, JobModel jobModel,
+                                IntFunction<JobModel> jobModelFactory,
+                                BiFunction<JobModel, Integer, ? extends StreamJob> jobFactory) {
+        this(memberId, new AtomicReference<>(new Assignment(memberIds, jobModel, memberIds.indexOf(memberId))),
+            jobModelFactory, jobFactory);
+    }
+
+    private RebalancingStreamJob(int memberId, AtomicReference<Assignment> assignment,
+                                 IntFunction<JobModel> jobModelFactory,
+                                 BiFunction<JobModel, Integer, ? extends StreamJob> jobFactory) {
+        super(() -> {
+            Assignment current = assignment.get();
+            return jobFactory.apply(current.jobModel, current.containerIndex);
+        });
+        Assert.isTrue(assignment.get().containerIndex >= 0, "memberIds must contain memberId " + memberId + ".");
+        Assert.notNull(jobModelFactory, "jobModelFactory cannot be null.");
+        Assert.notNull(jobFactory, "jobFactory cannot be null.");
+        this.memberId = memberId;
+        this.assignment = assignment;
+        this.jobModelFactory = jobModelFactory;
+        this.lastMemberIds = assignment.get().memberIds;
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("samza-rebalance-");
+        threadFactory.setDaemon(true);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+    }
+
+    public long getRebalanceDelayMillis() {
+        return rebalanceDelayMillis;
+    }
+
+    /**
+     * Sets how long to wait after a membership change before rebalancing, so that members joining or leaving at
+     * about the same time (e.g. during a rolling deploy) only cause one restart.
+     *
+     * @param rebalanceDelayMillis the time to wait for further membership changes
+     */
+    public void setRebalanceDelayMillis(long rebalanceDelayMillis) {
+        Assert.isTrue(rebalanceDelayMillis >= 0, "rebalanceDelayMillis cannot be negative.");
+        this.rebalanceDelayMillis = rebalanceDelayMillis;
+    }
+
+    /**
+     * @return the index of this member's container in the current JobModel
+     */
+    public int getContainerIndex() {
+        return assignment.get().containerIndex;
+    }
+
+    public JobModel getJobModel() {
+        return assignment.get().jobModel;
+    }
+
+    /**
+     * @return how often the container was restarted because its tasks changed
+     */
+    public int getRestartCount() {
+        return restartCount;
+    }
+
+    /**
+     * Schedules a rebalance for the given live members, replacing one that is still pending.
+     *
+     * @param memberIds the ids of all live members, sorted ascending
+     */
+    public void onMembershipChanged(List<Integer> memberIds) {
+        List<Integer> ids = Collections.unmodifiableList(new ArrayList<>(memberIds));
+        synchronized (scheduler) {
+            if (pendingRebalance != null) {
+                pendingRebalance.cancel(false);
+            }
+            lastMemberIds = ids;
+            pendingRebalance = scheduler.schedule(() -> {
+                try {
+                    rebalance(ids);
+                } catch (Exception e) {
+                    log.error("Unable to rebalance Samza container for members " + ids + ": " + e.getMessage(), e);
+                }
+            }, rebalanceDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    protected synchronized void rebalance(List<Integer> memberIds) {
+
+        long start = System.currentTimeMillis();
+        Assignment previous = assignment.get();
+        boolean tasksChanged = reassign(memberIds);
+
+        if (joining) {
+            joining = false;
+            if (active) {
+                log.info("Starting Samza container {} with {} tasks after waiting for the other members {} to " +
+                    "rebalance.", getContainerIndex(), assignment.get().getContainerModel().getTasks().size(),
+                    memberIds);
+                startContainer();
+            }
+            return;
+        }
+
+        if (!tasksChanged || !active) {
+            return; //the next start uses the new assignment
+        }
+
+        Assignment next = assignment.get();
+        log.info("Members changed to {}, restarting Samza container {} (previously {}) with {} tasks (previously {}).",
+            memberIds, next.containerIndex, previous.containerIndex, next.getContainerModel().getTasks().size(),
+            previous.getContainerModel().getTasks().size());
+        restart();
+        restartCount++;
+        log.info("Rebalanced Samza container in {} ms.", System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Updates the assignment for the given live members.
+     *
+     * @return true if the tasks assigned to this member changed
+     */
+    private boolean reassign(List<Integer> memberIds) {
+
+        Assignment current = assignment.get();
+        if (memberIds.equals(current.memberIds)) {
+            return false;
+        }
+
+        int index = memberIds.indexOf(memberId);
+        if (index < 0) {
+            //e.g. our session expired and the member node hasn't been re-created yet:
+            log.warn("Member {} is not one of the live members {}, keeping the current assignment.", memberId,
+                memberIds);
+            return false;
+        }
+
+        JobModel jobModel = memberIds.size() == current.memberIds.size() ?
+            current.jobModel : jobModelFactory.apply(memberIds.size());
+        Assignment next = new Assignment(memberIds, jobModel, index);
+        assignment.set(next);
+
+        Map<TaskName, TaskModel> tasks = next.getContainerModel().getTasks();
+        if (tasks.equals(current.getContainerModel().getTasks())) {
+            log.info("Members changed to {}, but the {} tasks of container {} did not change.", memberIds,
+                tasks.size(), index);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return true while this member waits for the other members to rebalance before it starts its container
+     */
+    public synchronized boolean isJoining() {
+        return joining;
+    }
+
+    @Override
+    public synchronized void start() {
+        active = true;
+        List<Integer> memberIds;
+        synchronized (scheduler) {
+            memberIds = lastMemberIds;
+        }
+        if (!started && memberIds.size() > 1) {
+            //the other members are running the tasks this member takes over until they rebalance:
+            joining = true;
+            log.info("Joining live members {}, starting Samza container after {} ms without membership changes.",
+                memberIds, rebalanceDelayMillis);
+            onMembershipChanged(memberIds);
+            return;
+        }
+        startContainer();
+    }
+
+    private void startContainer() {
+        started = true;
+        super.start();
+    }
+
+    @Override
+    public synchronized void stop() {
+        active = false;
+        super.stop();
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        scheduler.shutdownNow();
+    }
+
+    private static class Assignment {
+
+        private final List<Integer> memberIds;
+        private final JobModel jobModel;
+        private final int containerIndex;
+
+        Assignment(List<Integer> memberIds, JobModel jobModel, int containerIndex) {
+            this.memberIds = new ArrayList<>(memberIds);
+            this.jobModel = jobModel;
+            this.containerIndex = containerIndex;
+        }
+
+        ContainerModel getContainerModel() {
+            ContainerModel model = jobModel.getContainers().get(containerIndex);
+            Assert.notNull(model, "JobModel does not have a container " + containerIndex + ".");
+            return model;
+        }
+    }
+}
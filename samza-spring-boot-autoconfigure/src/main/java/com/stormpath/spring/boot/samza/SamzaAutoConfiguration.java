@@ -1,5 +1,7 @@
 package com.stormpath.spring.boot.samza;
 
+import com.stormpath.samza.task.AsyncStreamTask;
+import com.stormpath.samza.task.BatchStreamTask;
 import com.stormpath.spring.context.StaticApplicationContextProvider;
 import org.apache.samza.checkpoint.CheckpointManager;
 import org.apache.samza.checkpoint.CheckpointManagerFactory;
@@ -13,31 +15,52 @@ import org.apache.samza.coordinator.JobCoordinator$;
 import org.apache.samza.job.StreamJob;
 import org.apache.samza.job.model.ContainerModel;
 import org.apache.samza.job.model.JobModel;
+import org.apache.samza.metrics.MetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.BeanInitializationException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.core.env.CompositePropertySource;
 import org.springframework.core.env.ConfigurableEnvironment;
 import org.springframework.core.env.EnumerablePropertySource;
 import org.springframework.core.env.PropertySource;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 
+import java.io.File;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 
 @Configuration
 @ConditionalOnProperty(name = "samza.enabled", matchIfMissing = true)
 public class SamzaAutoConfiguration {
 
+    private static final Logger log = LoggerFactory.getLogger(SamzaAutoConfiguration.class);
+
     protected static final String SAMZA_PROPERTY_PREFIX = "samza.";
 
     @Autowired
@@ -46,12 +69,29 @@ public class SamzaAutoConfiguration {
     @Autowired
     private ApplicationContext applicationContext;
 
+    //e.g. ZooKeeper-backed.  If defined, the container count and id follow the live members of the job:
+    @Autowired(required = false)
+    private ContainerMembership samzaContainerMembership;
+
+    //e.g. ZooKeeper-backed.  If defined, the JobModel is only computed by one container and shared with the others:
+    @Autowired(required = false)
+    private JobModelCoordinator samzaJobModelCoordinator;
+
+    @Autowired(required = false)
+    private List<ContainerAssignmentListener> samzaContainerAssignmentListeners;
+
     @Value("#{ @environment['samza.container.count'] ?: 1 }")
     private int samzaContainerCount; //only used for static configuration of the number of job instances
 
     @Value("#{ @environment['samza.container.id'] ?: 0 }")
     private int samzaContainerId;
 
+    @Value("#{ @environment['samza.container.local.ids'] ?: null }")
+    private String samzaContainerLocalIds; //e.g. '0-7' or '0,2,4-6' - only used for static configuration
+
+    @Value("#{ @environment['samza.container.local.count'] ?: 0 }")
+    private int samzaContainerLocalCount; //only used for static configuration
+
     @Value("#{ @environment['samza.job.name'] ?: (@environment['spring.application.name'] ?: '') }")
     private String samzaJobName;
 
@@ -67,15 +107,55 @@ public class SamzaAutoConfiguration {
     @Value("#{ @environment['samza.job.stopWaitMillis'] ?: 1000 }")
     private long samzaJobStopWaitMillis = 1000;
 
+    //0 disables draining of buffered envelopes (and the final commit) on shutdown:
+    @Value("#{ @environment['samza.job.drainWaitMillis'] ?: 0 }")
+    private long samzaJobDrainWaitMillis = 0;
+
+    //> 1 creates the StreamTask beans of each container concurrently (while stores are restored):
+    @Value("#{ @environment['samza.job.taskCreationParallelism'] ?: 1 }")
+    private int samzaJobTaskCreationParallelism = 1;
+
+    //single = every task processes messages on its container's thread.  platform (a pool of samza.job.executor.threads
+    //threads) or virtual (one virtual thread per message, Java 21+) = blocking tasks run on the 'samzaTaskExecutor'
+    //bean, one message at a time per task.  Such tasks cannot use stores (see ExecutorStreamTask):
+    @Value("#{ @environment['samza.job.executor'] ?: 'single' }")
+    private String samzaJobExecutor = "single";
+
+    @Value("#{ @environment['samza.job.executor.threads'] ?: 64 }")
+    private int samzaJobExecutorThreads = 64;
+
+    //builds the JobModel in the background (fetching stream metadata in parallel) while the rest of the application
+    //context initializes.  The job's containers are then created in the background when it is started:
+    @Value("#{ @environment['samza.job.startup.async'] ?: false }")
+    private boolean samzaJobStartupAsync = false;
+
+    @Value("#{ @environment['samza.job.startup.parallelism'] ?: 8 }")
+    private int samzaJobStartupParallelism = 8;
+
+    //reuses the last JobModel on restart if the config, input partitions and container count are unchanged:
+    @Value("#{ @environment['samza.job.model.cache.file'] ?: null }")
+    private String samzaJobModelCacheFile;
+
+    //how long to wait for further membership changes before rebalancing, and before a joining member starts (only if
+    //members are dynamic):
+    @Value("#{ @environment['samza.job.rebalance.delayMillis'] ?: 5000 }")
+    private long samzaJobRebalanceDelayMillis = 5000;
+
+    private CompletableFuture<JobModel> samzaJobModelFuture;
+
+    private SharedCheckpointManager samzaSharedCheckpointManager; //null unless samzaConfig() shares the manager
+
+    private List<Integer> samzaContainerMemberIds; //the live members the initial JobModel is built for
+
     @Bean
     public Map<String, String> samzaConfigurationProperties() {
+        //a singleton bean, so the property sources are only scanned once no matter how often this is called:
         Map<String, String> props = new HashMap<>();
-        findPropertyNamesStartingWith(configurableEnvironment, SAMZA_PROPERTY_PREFIX).stream()
-            .forEach(key -> {
-                String value = configurableEnvironment.getProperty(key);
-                String unprefixed = key.substring(SAMZA_PROPERTY_PREFIX.length());
-                props.put(unprefixed, value);
-            });
+        for (String key : findPropertyNamesStartingWith(configurableEnvironment, SAMZA_PROPERTY_PREFIX)) {
+            String value = configurableEnvironment.getProperty(key);
+            String unprefixed = key.substring(SAMZA_PROPERTY_PREFIX.length());
+            props.put(unprefixed, value);
+        }
         return props;
     }
 
@@ -85,6 +165,15 @@ public class SamzaAutoConfiguration {
         return new DisabledCheckpointManager();
     }
 
+    @Bean
+    @ConditionalOnMissingBean
+    public JobModelCache samzaJobModelCache() {
+        if (StringUtils.hasText(samzaJobModelCacheFile)) {
+            return new FileJobModelCache(new File(samzaJobModelCacheFile));
+        }
+        return new DisabledJobModelCache();
+    }
+
     @Bean
     @ConditionalOnMissingBean
     public Config samzaConfig() {
@@ -126,7 +215,12 @@ public class SamzaAutoConfiguration {
         if (!props.containsKey(key)) {
 
             if (/*factory == null &&*/ manager != null && (!(manager instanceof DisabledCheckpointManager))) {
-                factory = new FixedCheckpointManagerFactory(manager);
+                if (isBufferingTaskDefined()) {
+                    //don't checkpoint past messages waiting in a pending batch or still being processed:
+                    manager = new BufferingCheckpointManager(manager);
+                }
+                samzaSharedCheckpointManager = new SharedCheckpointManager(manager);
+                factory = new FixedCheckpointManagerFactory(samzaSharedCheckpointManager);
             }
 
             if (factory != null) {
@@ -134,26 +228,110 @@ public class SamzaAutoConfiguration {
                 String className = ConfigTimeCheckpointManagerFactory.class.getCanonicalName();
                 props.put(key, className);
             }
+        } else if (isBufferingTaskDefined()) {
+            log.warn("The '{}' property is set, so checkpoints of BatchStreamTasks or AsyncStreamTasks may include " +
+                "messages that have not been processed yet.", key);
         }
 
         return new MapConfig(props);
     }
 
+    private boolean isBufferingTaskDefined() {
+        return isTaskExecutorEnabled() ||
+            applicationContext.getBeanNamesForType(BatchStreamTask.class).length > 0 ||
+            applicationContext.getBeanNamesForType(AsyncStreamTask.class).length > 0;
+    }
+
+    private boolean isTaskExecutorEnabled() {
+        Assert.isTrue(Arrays.asList("single", "platform", "virtual").contains(samzaJobExecutor),
+            "samza.job.executor must be one of 'single', 'platform' or 'virtual'.");
+        return !"single".equals(samzaJobExecutor);
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    @ConditionalOnMissingBean(name = "samzaTaskExecutor")
+    @ConditionalOnExpression("'${samza.job.executor:single}' != 'single'")
+    public ExecutorService samzaTaskExecutor() {
+        if ("virtual".equals(samzaJobExecutor)) {
+            return newVirtualThreadPerTaskExecutor();
+        }
+        Assert.isTrue(samzaJobExecutorThreads > 0, "samza.job.executor.threads must be greater than zero.");
+        return Executors.newFixedThreadPool(samzaJobExecutorThreads, new CustomizableThreadFactory("samza-task-"));
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        //resolved reflectively so the starter still runs on Java 8:
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("samza.job.executor=virtual requires Java 21 or later.", e);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unable to create virtual thread executor: " + e.getMessage(), e);
+        }
+    }
+
     @Bean
     @ConditionalOnMissingBean(name = "samzaContainerCount")
     public int samzaContainerCount() {
+        if (samzaContainerMembership != null) {
+            return getSamzaContainerMemberIds().size();
+        }
         Assert.isTrue(samzaContainerCount > 0, "samza.container.count must be a positive integer (greater than zero).");
-        return samzaContainerCount; //TODO enable Zookeeper supplier to avoid YARN messiness
+        return samzaContainerCount; //static - define a ContainerMembership bean (e.g. ZooKeeper) to follow live members
     }
 
     @Bean
     @ConditionalOnMissingBean(name = "samzaContainerId")
     public int samzaContainerId() {
+        if (samzaContainerMembership != null) {
+            //the rank among the live members, so the model is dense even if member ids have gaps:
+            return getSamzaContainerMemberIds().indexOf(samzaContainerMembership.getMemberId());
+        }
         Assert.isTrue(samzaContainerId >= 0, "samza.container.id must be a non-negative integer (0 or greater)");
         return samzaContainerId; //will be overwritten if zookeeper is enabled
     }
 
+    private synchronized List<Integer> getSamzaContainerMemberIds() {
+        if (samzaContainerMemberIds == null) {
+            List<Integer> ids = samzaContainerMembership.getMemberIds();
+            Assert.isTrue(ids.contains(samzaContainerMembership.getMemberId()),
+                "The live members " + ids + " do not include this container's member id.");
+            samzaContainerMemberIds = ids;
+        }
+        return samzaContainerMemberIds;
+    }
+
     @Bean
+    @ConditionalOnMissingBean(name = "samzaContainerIds")
+    public List<Integer> samzaContainerIds() {
+        //the ids of all containers that will run concurrently in this JVM.  Defaults to only samzaContainerId, but
+        //samza.container.local.count uses consecutive ids starting at samzaContainerId.  Both are only supported
+        //with static container ids - other processes may hold the ids next to one claimed dynamically:
+
+        boolean idsSpecified = StringUtils.hasText(samzaContainerLocalIds);
+
+        Assert.isTrue(samzaContainerLocalCount >= 0, "samza.container.local.count must be a non-negative integer.");
+        Assert.isTrue(!idsSpecified || samzaContainerLocalCount == 0,
+            "Only one of samza.container.local.ids or samza.container.local.count may be specified.");
+
+        if (idsSpecified) {
+            return parseContainerIds(samzaContainerLocalIds);
+        }
+
+        int firstId = samzaContainerId();
+        int count = Math.max(samzaContainerLocalCount, 1);
+
+        List<Integer> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ids.add(firstId + i);
+        }
+        return ids;
+    }
+
+    //lazy, so that in async mode the application context doesn't wait for the JobModel (the job uses it on start):
+    @Bean
+    @Lazy
     @ConditionalOnMissingBean
     public JobModel samzaJobModel() {
         Config samzaConfig = samzaConfig();
@@ -161,16 +339,68 @@ public class SamzaAutoConfiguration {
         int count = samzaContainerCount();
         Assert.isTrue(count > 0, "samzaContainerCount must be a positive integer (greater than zero).");
 
-        return JobCoordinator$.MODULE$.buildJobModel(samzaConfig, count);
+        if (samzaJobStartupAsync) {
+            return awaitJobModel(buildJobModelAsync(samzaConfig, count));
+        }
+
+        return buildJobModel(samzaConfig, count);
+    }
+
+    private static JobModel awaitJobModel(CompletableFuture<JobModel> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            throw new BeanInitializationException("Unable to build Samza JobModel: " + cause.getMessage(), cause);
+        }
+    }
+
+    protected JobModel buildJobModel(Config samzaConfig, int count) {
+        if (!(samzaJobModelCache() instanceof DisabledJobModelCache)) {
+            return coordinateJobModel(samzaConfig, count, createJobModelBuilder(samzaConfig, count)::build);
+        }
+
+        return coordinateJobModel(samzaConfig, count, () -> JobCoordinator$.MODULE$.buildJobModel(samzaConfig, count));
+    }
+
+    protected JobModel coordinateJobModel(Config samzaConfig, int count, Supplier<JobModel> builder) {
+        if (samzaJobModelCoordinator != null) {
+            return samzaJobModelCoordinator.getJobModel(samzaConfig, count, builder);
+        }
+        return builder.get();
+    }
+
+    protected JobModelBuilder createJobModelBuilder(Config samzaConfig, int containerCount) {
+        JobModelBuilder builder = new JobModelBuilder(samzaConfig, containerCount);
+        builder.setParallelism(samzaJobStartupParallelism);
+        JobModelCache cache = samzaJobModelCache();
+        if (!(cache instanceof DisabledJobModelCache)) {
+            builder.setCache(cache);
+        }
+        return builder;
+    }
+
+    protected synchronized CompletableFuture<JobModel> buildJobModelAsync(Config samzaConfig, int containerCount) {
+        if (samzaJobModelFuture == null) {
+            JobModelBuilder builder = createJobModelBuilder(samzaConfig, containerCount);
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("samza-startup-");
+            executor.setDaemon(true);
+            samzaJobModelFuture = CompletableFuture.supplyAsync(
+                () -> coordinateJobModel(samzaConfig, containerCount, builder::build), executor);
+        }
+        return samzaJobModelFuture;
     }
 
     @Bean
+    @Lazy
     @ConditionalOnMissingBean
     public SamzaContainer samzaContainer() {
+        //when running multiple containers in this JVM, this is the first one:
+        return createSamzaContainer(samzaJobModel(), samzaContainerIds().get(0));
+    }
 
-        JobModel jobModel = samzaJobModel();
+    protected SamzaContainer createSamzaContainer(JobModel jobModel, int containerId) {
 
-        int containerId = samzaContainerId();
         Assert.isTrue(containerId >= 0, "samzaContainerId must be a non-negative integer (0 or greater).");
 
         Map<Integer, ContainerModel> containers = jobModel.getContainers();
@@ -182,16 +412,88 @@ public class SamzaAutoConfiguration {
             throw new BeanInitializationException(msg);
         }
 
-        return SamzaContainer$.MODULE$.apply(containerModel, jobModel);
+        if (samzaContainerAssignmentListeners != null) {
+            for (ContainerAssignmentListener listener : samzaContainerAssignmentListeners) {
+                try {
+                    listener.containerAssigned(containerModel);
+                } catch (RuntimeException e) {
+                    log.warn("ContainerAssignmentListener " + listener + " failed: " + e.getMessage(), e);
+                }
+            }
+        }
+
+        SamzaContainer container = SamzaContainer$.MODULE$.apply(containerModel, jobModel);
+
+        if (samzaContainerAssignmentListeners != null) {
+            MetricsRegistry registry = container.org$apache$samza$container$SamzaContainer$$metrics.registry();
+            for (ContainerAssignmentListener listener : samzaContainerAssignmentListeners) {
+                try {
+                    listener.containerCreated(containerModel, registry);
+                } catch (RuntimeException e) {
+                    log.warn("ContainerAssignmentListener " + listener + " failed: " + e.getMessage(), e);
+                }
+            }
+        }
+
+        return container;
     }
 
     @Bean
     @ConditionalOnMissingBean
     public StreamJob samzaJob() {
 
-        SamzaContainer container = samzaContainer();
+        if (samzaContainerMembership != null) {
+            return createRebalancingStreamJob(samzaContainerMembership);
+        }
+
+        if (samzaJobStartupAsync) {
+            //start building the JobModel now, and only wait for it (and create the containers) on job start - in the
+            //background, so refreshing the application context doesn't wait for it either:
+            CompletableFuture<JobModel> future = buildJobModelAsync(samzaConfig(), samzaContainerCount());
+            int containerId = samzaContainerIds().get(0);
+            //the delegate is created on a background thread, possibly while the context is still refreshing, so it
+            //must not create beans (e.g. the lazy samzaJobModel and samzaContainer beans) - that could deadlock:
+            DeferredStreamJob job = new DeferredStreamJob(() -> {
+                JobModel jobModel = awaitJobModel(future);
+                return createStreamJob(jobModel, createSamzaContainer(jobModel, containerId));
+            });
+            job.setPhase(samzaJobPhase);
+            //not a daemon thread, since the container threads it creates inherit that:
+            job.setStartExecutor(new SimpleAsyncTaskExecutor("samza-job-start-"));
+            job.setStartWaitMillis(samzaJobStartWaitMillis);
+            return job;
+        }
+
+        return createStreamJob(samzaJobModel(), samzaContainer());
+    }
+
+    /**
+     * @param jobModel       the job's JobModel
+     * @param firstContainer the container for the first of the {@link #samzaContainerIds() samzaContainerIds}
+     * @return the job running all containers of this JVM
+     */
+    protected StreamJob createStreamJob(JobModel jobModel, SamzaContainer firstContainer) {
+
+        List<Integer> containerIds = samzaContainerIds();
 
-        SpringThreadJob job = new SpringThreadJob(container);
+        if (containerIds.size() == 1) {
+            return createSpringThreadJob(firstContainer);
+        }
+
+        Map<Integer, SamzaContainerRunner> containers = new LinkedHashMap<>();
+        containers.put(containerIds.get(0), createSamzaContainerRunner(firstContainer));
+        for (Integer containerId : containerIds.subList(1, containerIds.size())) {
+            containers.put(containerId, createSamzaContainerRunner(createSamzaContainer(jobModel, containerId)));
+        }
+
+        if (samzaSharedCheckpointManager != null) {
+            //the containers start concurrently, so the shared manager is started once with all of their tasks:
+            for (Integer containerId : containerIds) {
+                samzaSharedCheckpointManager.register(jobModel.getContainers().get(containerId).getTasks().keySet());
+            }
+        }
+
+        SpringMultiThreadJob job = new SpringMultiThreadJob(containers);
 
         if (samzaJobThreadName != null) {
             job.setThreadName(samzaJobThreadName);
@@ -204,42 +506,121 @@ public class SamzaAutoConfiguration {
         return job;
     }
 
-    protected static Set<String> findPropertyNamesStartingWith(ConfigurableEnvironment env, String prefix) {
-        return getAllProperties(env).keySet().stream()
-            .filter(key -> key.startsWith(prefix))
-            .collect(Collectors.toSet());
-    }
+    protected SpringThreadJob createSpringThreadJob(SamzaContainer container) {
 
-    protected static Map<String, Object> getAllProperties(ConfigurableEnvironment aEnv) {
-        Map<String, Object> result = new HashMap<>();
-        aEnv.getPropertySources().forEach(ps -> addAll(result, getAllProperties(ps)));
-        return result;
+        SpringThreadJob job = new SpringThreadJob(createSamzaContainerRunner(container));
+
+        if (samzaJobThreadName != null) {
+            job.setThreadName(samzaJobThreadName);
+        }
+
+        job.setPhase(samzaJobPhase);
+        job.setStartWaitMillis(samzaJobStartWaitMillis);
+        job.setStopWaitMillis(samzaJobStopWaitMillis);
+
+        return job;
     }
 
-    protected static Map<String, Object> getAllProperties(PropertySource<?> aPropSource) {
-        Map<String, Object> result = new HashMap<>();
+    protected StreamJob createRebalancingStreamJob(ContainerMembership membership) {
+
+        Assert.isTrue(samzaContainerIds().size() == 1,
+            "Only one Samza container per JVM is supported if the containers follow the live members of the job.");
 
-        if (aPropSource instanceof CompositePropertySource) {
-            CompositePropertySource cps = (CompositePropertySource) aPropSource;
-            cps.getPropertySources().forEach(ps -> addAll(result, getAllProperties(ps)));
-            return result;
+        Config samzaConfig = samzaConfig();
+        JobModel jobModel = samzaJobModel();
+        int containerId = samzaContainerId();
+
+        //the samzaContainer bean runs first, containers are only created for later assignments:
+        AtomicBoolean initial = new AtomicBoolean(true);
+
+        RebalancingStreamJob job = new RebalancingStreamJob(membership.getMemberId(), getSamzaContainerMemberIds(),
+            jobModel, count -> buildJobModel(samzaConfig, count), (model, index) -> {
+            boolean first = initial.getAndSet(false) && model == jobModel && index == containerId;
+            return createSpringThreadJob(first ? samzaContainer() : createSamzaContainer(model, index));
+        });
+        job.setPhase(samzaJobPhase);
+        job.setRebalanceDelayMillis(samzaJobRebalanceDelayMillis);
+
+        membership.addListener(job::onMembershipChanged);
+        //catch up with members that joined or left since the JobModel was built:
+        job.onMembershipChanged(membership.getMemberIds());
+
+        return job;
+    }
+
+    protected SamzaContainerRunner createSamzaContainerRunner(SamzaContainer container) {
+        SamzaContainerRunner runner = new SamzaContainerRunner(container);
+        runner.setDrainWaitMillis(samzaJobDrainWaitMillis);
+        runner.setTaskCreationParallelism(samzaJobTaskCreationParallelism);
+        if (isTaskExecutorEnabled()) {
+            runner.setTaskExecutor(applicationContext.getBean("samzaTaskExecutor", Executor.class));
         }
+        return runner;
+    }
+
+    protected static List<Integer> parseContainerIds(String value) {
+
+        List<Integer> ids = new ArrayList<>();
 
-        if (aPropSource instanceof EnumerablePropertySource<?>) {
-            EnumerablePropertySource<?> ps = (EnumerablePropertySource<?>) aPropSource;
-            Arrays.asList(ps.getPropertyNames()).forEach(key -> result.put(key, ps.getProperty(key)));
-            return result;
+        for (String token : StringUtils.commaDelimitedListToStringArray(value)) {
+
+            token = token.trim();
+            if (!StringUtils.hasLength(token)) {
+                continue;
+            }
+
+            int start;
+            int end;
+            try {
+                int index = token.indexOf('-');
+                if (index > 0) { //range, e.g. 0-7
+                    start = Integer.parseInt(token.substring(0, index).trim());
+                    end = Integer.parseInt(token.substring(index + 1).trim());
+                } else {
+                    start = end = Integer.parseInt(token);
+                }
+            } catch (NumberFormatException e) {
+                String msg = "Invalid samza container id or id range '" + token + "' in '" + value + "'.";
+                throw new IllegalArgumentException(msg, e);
+            }
+
+            Assert.isTrue(start >= 0, "samza container ids must be non-negative integers (0 or greater).");
+            Assert.isTrue(start <= end, "Invalid samza container id range '" + token + "': start must be " +
+                "less than or equal to end.");
+
+            for (int id = start; id <= end; id++) {
+                Assert.isTrue(!ids.contains(id), "Duplicate samza container id " + id + " in '" + value + "'.");
+                ids.add(id);
+            }
         }
 
-        return result;
+        Assert.notEmpty(ids, "At least one samza container id must be specified.");
+
+        return ids;
     }
 
-    private static void addAll(Map<String, Object> aBase, Map<String, Object> aToBeAdded) {
-        for (Map.Entry<String, Object> entry : aToBeAdded.entrySet()) {
-            if (aBase.containsKey(entry.getKey())) {
-                continue;
+    protected static Set<String> findPropertyNamesStartingWith(ConfigurableEnvironment env, String prefix) {
+        //only names are collected - values are resolved by the environment for matching names only:
+        Set<String> names = new LinkedHashSet<>();
+        for (PropertySource<?> source : env.getPropertySources()) {
+            addPropertyNamesStartingWith(source, prefix, names);
+        }
+        return names;
+    }
+
+    private static void addPropertyNamesStartingWith(PropertySource<?> source, String prefix, Set<String> names) {
+
+        if (source instanceof CompositePropertySource) {
+            //nested sources are visited individually since non-enumerable ones can't be listed by the composite:
+            for (PropertySource<?> nested : ((CompositePropertySource) source).getPropertySources()) {
+                addPropertyNamesStartingWith(nested, prefix, names);
+            }
+        } else if (source instanceof EnumerablePropertySource<?>) {
+            for (String name : ((EnumerablePropertySource<?>) source).getPropertyNames()) {
+                if (name.startsWith(prefix)) {
+                    names.add(name);
+                }
             }
-            aBase.put(entry.getKey(), entry.getValue());
         }
     }
 }
@@ -0,0 +1,371 @@
+package com.stormpath.spring.boot.samza;
+
+import org.apache.samza.SamzaException;
+import org.apache.samza.container.RunLoop;
+import org.apache.samza.container.SamzaContainer;
+import org.apache.samza.container.TaskInstance;
+import org.apache.samza.metrics.Counter;
+import org.apache.samza.metrics.Gauge;
+import org.apache.samza.metrics.MetricsRegistry;
+import org.apache.samza.system.IncomingMessageEnvelope;
+import org.apache.samza.system.SystemConsumers;
+import org.apache.samza.system.SystemStreamPartition;
+import org.apache.samza.task.ReadableCoordinator;
+import org.apache.samza.task.StreamTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static scala.collection.JavaConversions.asJavaCollection;
+import static scala.collection.JavaConversions.mapAsJavaMap;
+
+/**
+ * Runs a {@link SamzaContainer} with the same startup and shutdown sequence as {@link SamzaContainer#run()}, but
+ * reports each {@link ContainerPhase phase} of the container lifecycle to registered listeners and publishes the
+ * time spent in each phase as gauges in the container's metrics registry.
+ */
+public class SamzaContainerRunner implements Runnable {
+
+    private static final Logger log = LoggerFactory.getLogger(SamzaContainerRunner.class);
+
+    public static final String METRICS_GROUP = SamzaContainerRunner.class.getName();
+
+    public enum ContainerPhase {
+        NEW,
+        STARTING, //metrics and offset manager
+        RESTORING, //stores, including changelog restoration
+        INITIALIZING, //producers, task init and consumers
+        RUNNING, //in the run loop
+        DRAINING, //processing already buffered envelopes and committing after the run loop exits
+        STOPPING,
+        STOPPED,
+        FAILED
+    }
+
+    public interface ContainerPhaseListener {
+        void onPhase(ContainerPhase phase);
+    }
+
+    //SamzaContainer doesn't expose its RunLoop, so the (private) field getter is resolved once per JVM:
+    private static final MethodHandle RUN_LOOP_GETTER;
+    private static final Exception RUN_LOOP_GETTER_FAILURE;
+
+    static {
+        MethodHandle getter = null;
+        Exception failure = null;
+        try {
+            Field field = SamzaContainer.class.getDeclaredField("runLoop");
+            field.setAccessible(true);
+            getter = MethodHandles.lookup().unreflectGetter(field);
+        } catch (Exception e) {
+            failure = e;
+        }
+        RUN_LOOP_GETTER = getter;
+        RUN_LOOP_GETTER_FAILURE = failure;
+    }
+
+    private final SamzaContainer container;
+    private final RunLoop runLoop;
+    private final List<ContainerPhaseListener> listeners = new CopyOnWriteArrayList<>();
+
+    private final Gauge<String> phaseGauge;
+    private final Map<ContainerPhase, Gauge<Long>> phaseMillisGauges = new EnumMap<>(ContainerPhase.class);
+    private final Gauge<Long> startupMillisGauge;
+    private final Counter drainedEnvelopesCounter;
+    private final Gauge<Integer> undrainedEnvelopesGauge;
+
+    private long drainWaitMillis = 0; //0 = disabled: shut down immediately after the run loop exits
+    private int taskCreationParallelism = 1; //1 = task beans are created one at a time when each task is initialized
+    private Executor taskExecutor = null; //null = tasks process messages on the container thread
+
+    private volatile ContainerPhase phase = ContainerPhase.NEW;
+    private long phaseStartMillis;
+
+    public SamzaContainerRunner(SamzaContainer container) {
+        Assert.notNull(container, "SamzaContainer argument cannot be null.");
+        this.container = container;
+        this.runLoop = getRunLoop(container);
+
+        MetricsRegistry registry = container.org$apache$samza$container$SamzaContainer$$metrics.registry();
+        this.phaseGauge = registry.newGauge(METRICS_GROUP, "phase", phase.name());
+        for (ContainerPhase p : new ContainerPhase[]{ContainerPhase.STARTING, ContainerPhase.RESTORING,
+            ContainerPhase.INITIALIZING, ContainerPhase.DRAINING, ContainerPhase.STOPPING}) {
+            String name = p.name().toLowerCase() + "-ms";
+            phaseMillisGauges.put(p, registry.newGauge(METRICS_GROUP, name, 0L));
+        }
+        this.startupMillisGauge = registry.newGauge(METRICS_GROUP, "startup-ms", 0L);
+        this.drainedEnvelopesCounter = registry.newCounter(METRICS_GROUP, "drained-envelopes");
+        this.undrainedEnvelopesGauge = registry.newGauge(METRICS_GROUP, "undrained-envelopes", 0);
+    }
+
+    private static RunLoop getRunLoop(SamzaContainer container) {
+        if (RUN_LOOP_GETTER == null) {
+            String msg = "Unable to resolve the SamzaContainer.runLoop field.  This Samza version is not supported.";
+            throw new IllegalStateException(msg, RUN_LOOP_GETTER_FAILURE);
+        }
+        try {
+            return (RunLoop) RUN_LOOP_GETTER.invokeExact(container);
+        } catch (Throwable t) {
+            throw new IllegalStateException("Unable to obtain the SamzaContainer's RunLoop.", t);
+        }
+    }
+
+    public SamzaContainer getContainer() {
+        return container;
+    }
+
+    public long getDrainWaitMillis() {
+        return drainWaitMillis;
+    }
+
+    public void setDrainWaitMillis(long drainWaitMillis) {
+        Assert.isTrue(drainWaitMillis >= 0, "drainWaitMillis must be greater than or equal to zero.");
+        this.drainWaitMillis = drainWaitMillis;
+    }
+
+    /**
+     * Requests the container's run loop to exit after the current iteration; the container then drains (if enabled)
+     * and shuts down.  This is safe to call from any thread and at any time, including before the run loop starts.
+     */
+    public void shutdown() {
+        //a direct call to the Scala-generated setter: if a Samza upgrade changes its name, compilation fails:
+        runLoop.org$apache$samza$container$RunLoop$$shutdownNow_$eq(true);
+    }
+
+    public int getTaskCreationParallelism() {
+        return taskCreationParallelism;
+    }
+
+    public void setTaskCreationParallelism(int taskCreationParallelism) {
+        Assert.isTrue(taskCreationParallelism > 0, "taskCreationParallelism must be greater than zero.");
+        this.taskCreationParallelism = taskCreationParallelism;
+    }
+
+    public Executor getTaskExecutor() {
+        return taskExecutor;
+    }
+
+    /**
+     * Sets the executor that runs the {@code process} calls of the container's tasks, so a task blocking on I/O
+     * doesn't stall the others.  Each task still processes its messages one at a time, in order.
+     *
+     * @param taskExecutor the executor, or {@code null} to process messages on the container thread (the default).
+     */
+    public void setTaskExecutor(Executor taskExecutor) {
+        this.taskExecutor = taskExecutor;
+    }
+
+    public ContainerPhase getContainerPhase() {
+        return phase;
+    }
+
+    public void addListener(ContainerPhaseListener listener) {
+        Assert.notNull(listener, "listener cannot be null.");
+        listeners.add(listener);
+    }
+
+    public void removeListener(ContainerPhaseListener listener) {
+        listeners.remove(listener);
+    }
+
+    private void setPhase(ContainerPhase phase) {
+
+        long now = System.currentTimeMillis();
+
+        ContainerPhase previous = this.phase;
+        Gauge<Long> gauge = phaseMillisGauges.get(previous);
+        if (gauge != null) {
+            gauge.set(now - phaseStartMillis);
+        }
+
+        log.debug("Samza container phase {} -> {} ({} ms)", previous, phase,
+            previous == ContainerPhase.NEW ? 0 : now - phaseStartMillis);
+
+        this.phase = phase;
+        this.phaseStartMillis = now;
+        phaseGauge.set(phase.name());
+
+        for (ContainerPhaseListener listener : listeners) {
+            try {
+                listener.onPhase(phase);
+            } catch (RuntimeException e) {
+                log.warn("Samza container phase listener failed: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+
+        Throwable failure = null;
+        ExecutorService taskCreationExecutor = null;
+
+        long start = System.currentTimeMillis();
+
+        try {
+            setPhase(ContainerPhase.STARTING);
+            taskCreationExecutor = prepareTasks();
+            container.startMetrics();
+            container.startOffsetManager();
+
+            setPhase(ContainerPhase.RESTORING);
+            container.startStores();
+
+            setPhase(ContainerPhase.INITIALIZING);
+            container.startProducers();
+            container.startTask();
+            if (taskCreationExecutor != null) {
+                taskCreationExecutor.shutdown();
+            }
+            container.startConsumers();
+
+            long startupMillis = System.currentTimeMillis() - start;
+            startupMillisGauge.set(startupMillis);
+            log.info("Samza container started in {} ms.  Entering run loop.", startupMillis);
+
+            setPhase(ContainerPhase.RUNNING);
+            runLoop.run();
+
+            if (drainWaitMillis > 0) {
+                setPhase(ContainerPhase.DRAINING);
+                drain();
+            }
+        } catch (Throwable t) {
+            log.error("Caught exception in Samza container: " + t.getMessage(), t);
+            failure = t;
+            if (taskCreationExecutor != null) {
+                taskCreationExecutor.shutdownNow();
+            }
+        }
+
+        //same shutdown sequence as SamzaContainer#run(), regardless of how far startup went:
+        try {
+            setPhase(ContainerPhase.STOPPING);
+            container.shutdownConsumers();
+            container.shutdownTask();
+            container.shutdownProducers();
+            container.shutdownStores();
+            container.shutdownOffsetManager();
+            container.shutdownMetrics();
+        } catch (Throwable t) {
+            if (failure == null) {
+                failure = t;
+            } else {
+                failure.addSuppressed(t);
+            }
+        }
+
+        setPhase(failure == null ? ContainerPhase.STOPPED : ContainerPhase.FAILED);
+
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        if (failure != null) { //checked exceptions thrown from Scala code
+            throw new IllegalStateException("Samza container failed: " + failure.getMessage(), failure);
+        }
+    }
+
+    /**
+     * Sets the task executor (and the {@link CommitBarrier} that goes with it) on all of the container's tasks and
+     * starts creating their task beans concurrently if {@code taskCreationParallelism} is greater than one, so they
+     * are ready (or nearly so) by the time the tasks are initialized after stores are restored.
+     *
+     * @return the executor creating the task beans, or {@code null} if they are created during task initialization.
+     */
+    private ExecutorService prepareTasks() {
+
+        ExecutorService executor = null;
+        CommitBarrier commitBarrier = taskExecutor != null ? new CommitBarrier(runLoop) : null;
+
+        for (TaskInstance taskInstance : asJavaCollection(runLoop.taskInstances().values())) {
+            StreamTask task = taskInstance.org$apache$samza$container$TaskInstance$$task;
+            if (task instanceof ConfigTimeStreamTask) {
+                ConfigTimeStreamTask configTimeTask = (ConfigTimeStreamTask) task;
+                configTimeTask.setTaskExecutor(taskExecutor);
+                configTimeTask.setCommitBarrier(commitBarrier);
+                if (taskCreationParallelism > 1) {
+                    if (executor == null) {
+                        int threads = Math.min(taskCreationParallelism, runLoop.taskInstances().size());
+                        executor = Executors.newFixedThreadPool(threads,
+                            new CustomizableThreadFactory("samza-task-create-"));
+                    }
+                    configTimeTask.prepare(executor);
+                }
+            }
+        }
+
+        return executor;
+    }
+
+    /**
+     * Processes the envelopes that were already buffered when the run loop exited, up to {@code drainWaitMillis},
+     * and then flushes pending batches and commits every task so producers are flushed and checkpoints written
+     * before shutdown.
+     */
+    private void drain() {
+
+        long start = System.currentTimeMillis();
+        long deadline = start + drainWaitMillis;
+
+        SystemConsumers consumers = runLoop.consumerMultiplexer();
+        Map<SystemStreamPartition, TaskInstance> taskInstances =
+            mapAsJavaMap(runLoop.systemStreamPartitionToTaskInstance());
+
+        //choose() may still poll, so only envelopes that were buffered (incl. one per partition held by the chooser)
+        //when draining started are processed - anything fetched afterwards is left for the next owner:
+        int remaining = consumers.totalUnprocessedMessages() + taskInstances.size();
+        int drained = 0;
+
+        while (remaining > 0 && System.currentTimeMillis() < deadline) {
+            IncomingMessageEnvelope envelope = consumers.choose();
+            if (envelope == null) {
+                break;
+            }
+            TaskInstance taskInstance = taskInstances.get(envelope.getSystemStreamPartition());
+            //commit and shutdown requests are ignored - every task is committed below and we're shutting down:
+            taskInstance.process(envelope, new ReadableCoordinator(taskInstance.taskName()));
+            drainedEnvelopesCounter.inc();
+            drained++;
+            remaining--;
+        }
+
+        int undrained = consumers.totalUnprocessedMessages();
+        undrainedEnvelopesGauge.set(undrained);
+
+        for (TaskInstance taskInstance : asJavaCollection(runLoop.taskInstances().values())) {
+            StreamTask task = taskInstance.org$apache$samza$container$TaskInstance$$task;
+            if (task instanceof ConfigTimeStreamTask) {
+                try {
+                    ((ConfigTimeStreamTask) task).flush(); //so pending batches are included in the checkpoint
+                } catch (Exception e) {
+                    throw new SamzaException("Unable to flush task " + taskInstance.taskName() + ": " +
+                        e.getMessage(), e);
+                }
+            }
+            taskInstance.commit();
+        }
+
+        log.info("Drained {} envelopes and committed all tasks in {} ms ({} buffered envelopes not processed).",
+            drained, System.currentTimeMillis() - start, undrained);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + phase + "]";
+    }
+}
@@ -0,0 +1,149 @@
+package com.stormpath.spring.boot.samza;
+
+import org.apache.samza.checkpoint.Checkpoint;
+import org.apache.samza.checkpoint.CheckpointManager;
+import org.apache.samza.container.TaskName;
+import org.springframework.util.Assert;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Shares a single {@link CheckpointManager} between the Samza containers running in this JVM.  Each container uses
+ * its own {@link #newContainerCheckpointManager() view}, and the shared manager is only started by the first view that
+ * starts and stopped by the last one that stops, so a container that stops doesn't stop checkpointing for the others.
+ * <p>
+ * Managers usually only set up the tasks registered before they are started (e.g. create their checkpoint nodes), and
+ * the shared manager can't be restarted while other containers use it, so the tasks of all containers must be
+ * {@link #register(Collection) registered} before the first view starts.  A view that starts with tasks the shared
+ * manager wasn't started with fails.
+ */
+public class SharedCheckpointManager {
+
+    private final CheckpointManager delegate;
+    private final Set<TaskName> containerTaskNames = new HashSet<>(); //guarded by this
+    private final Set<TaskName> registeredTaskNames = new HashSet<>(); //guarded by this
+    private final Set<TaskName> startedTaskNames = new HashSet<>(); //guarded by this
+    private int startCount = 0; //guarded by this
+
+    public SharedCheckpointManager(CheckpointManager delegate) {
+        Assert.notNull(delegate, "Delegate CheckpointManager cannot be null.");
+        this.delegate = delegate;
+    }
+
+    public CheckpointManager getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * @return the number of views that are currently started
+     */
+    public synchronized int getStartCount() {
+        return startCount;
+    }
+
+    /**
+     * @return a new view of the shared manager for a single container
+     */
+    public CheckpointManager newContainerCheckpointManager() {
+        return new ContainerCheckpointManager();
+    }
+
+    /**
+     * Registers the tasks of all containers that will use this manager, so it is always started with all of them.
+     *
+     * @param taskNames the tasks of the containers in this JVM
+     */
+    public synchronized void register(Collection<TaskName> taskNames) {
+        Assert.notNull(taskNames, "taskNames cannot be null.");
+        containerTaskNames.addAll(taskNames);
+    }
+
+    private synchronized void register(TaskName taskName) {
+        registeredTaskNames.add(taskName);
+    }
+
+    private synchronized void start() {
+        registeredTaskNames.addAll(containerTaskNames);
+        if (startCount == 0) {
+            for (TaskName taskName : registeredTaskNames) {
+                delegate.register(taskName);
+            }
+            delegate.start();
+            startedTaskNames.addAll(registeredTaskNames);
+        } else if (!startedTaskNames.containsAll(registeredTaskNames)) {
+            Set<TaskName> unstarted = new HashSet<>(registeredTaskNames);
+            unstarted.removeAll(startedTaskNames);
+            //other containers may be using the manager, so it can't be restarted for these:
+            throw new IllegalStateException("Shared CheckpointManager " + delegate + " was started without tasks " +
+                unstarted + ".  Register the tasks of all containers in this JVM before starting the first one.");
+        }
+        startCount++;
+    }
+
+    private synchronized void stop() {
+        if (--startCount == 0) {
+            delegate.stop();
+            registeredTaskNames.clear(); //the next start may be for different tasks, e.g. after a rebalance
+            startedTaskNames.clear();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + delegate + "]";
+    }
+
+    private class ContainerCheckpointManager implements CheckpointManager {
+
+        private boolean started = false;
+
+        @Override
+        public void start() {
+            if (!started) {
+                SharedCheckpointManager.this.start();
+                started = true;
+            }
+        }
+
+        @Override
+        public void register(TaskName taskName) {
+            SharedCheckpointManager.this.register(taskName);
+        }
+
+        @Override
+        public void writeCheckpoint(TaskName taskName, Checkpoint checkpoint) {
+            delegate.writeCheckpoint(taskName, checkpoint);
+        }
+
+        @Override
+        public Checkpoint readLastCheckpoint(TaskName taskName) {
+            return delegate.readLastCheckpoint(taskName);
+        }
+
+        @Override
+        public Map<TaskName, Integer> readChangeLogPartitionMapping() {
+            return delegate.readChangeLogPartitionMapping();
+        }
+
+        @Override
+        public void writeChangeLogPartitionMapping(Map<TaskName, Integer> mapping) {
+            delegate.writeChangeLogPartitionMapping(mapping);
+        }
+
+        @Override
+        public void stop() {
+            if (started) {
+                started = false;
+                SharedCheckpointManager.this.stop();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return SharedCheckpointManager.this.toString();
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package com.stormpath.spring.boot.samza;
+
+import org.apache.samza.job.ApplicationStatus;
+import org.apache.samza.job.StreamJob;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A {@link StreamJob} that runs multiple Samza containers concurrently in the same JVM on a fixed thread pool (one
+ * thread per container).  Lifecycle operations apply to all containers and the reported status is the combined
+ * status of all of them.
+ */
+public class SpringMultiThreadJob implements StreamJob, InitializingBean, ApplicationContextAware, SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(SpringMultiThreadJob.class);
+
+    private final Map<Integer, SpringThreadJob> jobs; //keyed by samza container id
+    private ExecutorService executor = null;
+
+    private int phase = 0;
+    private String threadName = getClass().getSimpleName();
+    private long startWaitMillis = 2000;
+    private long stopWaitMillis = 1000;
+
+    private ApplicationContext applicationContext;
+
+    public SpringMultiThreadJob(Map<Integer, ? extends Runnable> samzaContainers) {
+        Assert.notEmpty(samzaContainers, "SamzaContainer Runnables map cannot be null or empty.");
+        Map<Integer, SpringThreadJob> jobs = new LinkedHashMap<>();
+        samzaContainers.forEach((id, container) -> jobs.put(id, new SpringThreadJob(container)));
+        this.jobs = Collections.unmodifiableMap(jobs);
+    }
+
+    public void setPhase(int phase) {
+        this.phase = phase;
+    }
+
+    public String getThreadName() {
+        return threadName;
+    }
+
+    public void setThreadName(String threadName) {
+        this.threadName = threadName;
+    }
+
+    public long getStartWaitMillis() {
+        return startWaitMillis;
+    }
+
+    public void setStartWaitMillis(long startWaitMillis) {
+        this.startWaitMillis = startWaitMillis;
+    }
+
+    public long getStopWaitMillis() {
+        return stopWaitMillis;
+    }
+
+    public void setStopWaitMillis(long stopWaitMillis) {
+        this.stopWaitMillis = stopWaitMillis;
+    }
+
+    @Override
+    public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
+        this.applicationContext = applicationContext;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        Assert.isTrue(startWaitMillis >= 0, "startWaitMillis must be greater than or equal to zero.");
+        Assert.isTrue(stopWaitMillis >= 0, "stopWaitMillis must be greater than or equal to zero.");
+        Assert.hasText(threadName, "threadName cannot be null or empty.");
+        Assert.notNull(applicationContext, "applicationContext cannot be null.");
+
+        for (Map.Entry<Integer, SpringThreadJob> entry : jobs.entrySet()) {
+            SpringThreadJob job = entry.getValue();
+            job.setThreadName(threadName + "-" + entry.getKey());
+            job.setApplicationContext(applicationContext);
+            job.afterPropertiesSet();
+        }
+    }
+
+    @Override
+    public boolean isAutoStartup() {
+        return true;
+    }
+
+    @Override
+    public void stop(Runnable runnable) {
+        try {
+            stop();
+        } finally {
+            runnable.run();
+        }
+    }
+
+    @Override
+    public void start() {
+
+        log.debug("Starting {} Samza container threads...", jobs.size());
+
+        executor = Executors.newFixedThreadPool(jobs.size(), new CustomizableThreadFactory(threadName + "-pool-"));
+
+        //start all containers first so they initialize concurrently, then wait for all of them:
+        for (SpringThreadJob job : jobs.values()) {
+            job.setExecutor(executor);
+            job.doStart();
+        }
+
+        ApplicationStatus status = getStatus();
+
+        if (startWaitMillis > 0) {
+            status = waitForStatus(ApplicationStatus.Running, startWaitMillis);
+        }
+
+        if (status == ApplicationStatus.New) {
+            //some containers are still starting up (e.g. restoring stores) and will report Running when ready:
+            log.info("{} Samza container threads have not all finished starting within {} milliseconds and will " +
+                "continue starting in the background.", jobs.size(), startWaitMillis);
+            return;
+        }
+
+        if (status != ApplicationStatus.Running) {
+            String msg = "Unable to start " + jobs.size() + " Samza container threads successfully within " +
+                startWaitMillis + " milliseconds.  Status: " + status;
+            throw new IllegalStateException(msg);
+        }
+
+        log.info("Started {} Samza container threads: {}", jobs.size(), status);
+    }
+
+    @Override
+    public void stop() {
+        log.debug("Stopping {} Samza containers...", jobs.size());
+        try {
+            kill();
+            //containers drain concurrently, so allow for the longest drain:
+            long drainWaitMillis = 0;
+            for (SpringThreadJob job : jobs.values()) {
+                drainWaitMillis = Math.max(drainWaitMillis, job.getDrainWaitMillis());
+            }
+            long waitMillis = stopWaitMillis + drainWaitMillis;
+            if (waitMillis > 0) {
+                waitForFinish(waitMillis);
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdown();
+                executor = null;
+            }
+        }
+        log.info("Stopped {} Samza containers.", jobs.size());
+    }
+
+    @Override
+    public boolean isRunning() {
+        for (SpringThreadJob job : jobs.values()) {
+            if (job.isRunning()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int getPhase() {
+        return this.phase;
+    }
+
+    @Override
+    public StreamJob submit() {
+        start();
+        return this;
+    }
+
+    @Override
+    public StreamJob kill() {
+
+        RuntimeException failure = null;
+
+        //attempt to kill every container even if one of them fails:
+        for (SpringThreadJob job : jobs.values()) {
+            try {
+                job.kill();
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+
+        return this;
+    }
+
+    @Override
+    public ApplicationStatus waitForFinish(long timeoutMs) {
+
+        Assert.isTrue(timeoutMs > 0, "timeoutMs must be greater than zero.");
+
+        long deadline = System.currentTimeMillis() + timeoutMs;
+
+        for (SpringThreadJob job : jobs.values()) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                break;
+            }
+            job.waitForFinish(remaining);
+        }
+
+        return getStatus();
+    }
+
+    @Override
+    public ApplicationStatus waitForStatus(ApplicationStatus status, long timeoutMs) {
+
+        Assert.isTrue(timeoutMs > 0, "timeoutMs must be greater than zero.");
+
+        try {
+            return whenStatus(status).get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return getStatus();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("waitForStatus interrupted.", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("waitForStatus failed.", e.getCause());
+        }
+    }
+
+    /**
+     * Returns a future that completes when all containers have reached the specified status or finished, or as soon
+     * as any container fails.  The future's value is the combined status at the time it completed.
+     *
+     * @param status the status to wait for
+     * @return a future that completes when all containers reach the specified status or finish, or any one fails.
+     * @see SpringThreadJob#whenStatus(ApplicationStatus)
+     */
+    public CompletableFuture<ApplicationStatus> whenStatus(ApplicationStatus status) {
+
+        CompletableFuture<ApplicationStatus> result = new CompletableFuture<>();
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[jobs.size()];
+
+        int i = 0;
+        for (SpringThreadJob job : jobs.values()) {
+            CompletableFuture<ApplicationStatus> future = job.whenStatus(status);
+            //there is no point in waiting for the others once one container fails:
+            future.thenAccept(s -> {
+                if (s == ApplicationStatus.UnsuccessfulFinish) {
+                    result.complete(s);
+                }
+            });
+            futures[i++] = future;
+        }
+
+        CompletableFuture.allOf(futures).thenRun(() -> result.complete(getStatus()));
+
+        return result;
+    }
+
+    @Override
+    public ApplicationStatus getStatus() {
+
+        //UnsuccessfulFinish if any container failed, SuccessfulFinish if all of them finished successfully,
+        //Running if all of them are running (or have finished successfully), New otherwise:
+
+        int successful = 0;
+        int running = 0;
+
+        for (SpringThreadJob job : jobs.values()) {
+            ApplicationStatus status = job.getStatus();
+            if (status == ApplicationStatus.UnsuccessfulFinish) {
+                return status;
+            }
+            if (status == ApplicationStatus.SuccessfulFinish) {
+                successful++;
+            } else if (status == ApplicationStatus.Running) {
+                running++;
+            }
+        }
+
+        if (successful == jobs.size()) {
+            return ApplicationStatus.SuccessfulFinish;
+        }
+        if (successful + running == jobs.size()) {
+            return ApplicationStatus.Running;
+        }
+        return ApplicationStatus.New;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + jobs.keySet();
+    }
+}
@@ -1,6 +1,5 @@
 package com.stormpath.spring.boot.samza;
 
-import org.apache.samza.container.RunLoop;
 import org.apache.samza.container.SamzaContainer;
 import org.apache.samza.job.ApplicationStatus;
 import org.apache.samza.job.StreamJob;
@@ -12,18 +11,30 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 import org.springframework.context.SmartLifecycle;
 import org.springframework.util.Assert;
-import org.springframework.util.ReflectionUtils;
 
-import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
 
 public class SpringThreadJob implements StreamJob, InitializingBean, ApplicationContextAware, SmartLifecycle {
 
     private static final Logger log = LoggerFactory.getLogger(SpringThreadJob.class);
 
     private final Runnable samzaContainer;
-    private Thread thread = null;
+    private Executor executor = null; //if null, a dedicated thread is created each time the job is started
     private volatile ApplicationStatus status;
-    private volatile boolean interrupting = false;
+    //pending status waiters, guarded by itself:
+    private final Map<ApplicationStatus, CompletableFuture<ApplicationStatus>> statusFutures =
+        new EnumMap<>(ApplicationStatus.class);
+    private volatile Thread runningThread; //only used to kill Runnables that are not SamzaContainerRunners
 
     private int phase = 0;
     private String threadName = getClass().getSimpleName();
@@ -34,7 +45,27 @@ public class SpringThreadJob implements StreamJob, InitializingBean, Application
 
     public SpringThreadJob(Runnable samzaContainer) {
         Assert.notNull(samzaContainer, "SamzaContainer Runnable argument cannot be null.");
+        if (samzaContainer instanceof SamzaContainer) {
+            //resolves the shutdown handle now so an unsupported Samza version fails at startup and not on kill:
+            samzaContainer = new SamzaContainerRunner((SamzaContainer) samzaContainer);
+        }
         this.samzaContainer = samzaContainer;
+        if (samzaContainer instanceof SamzaContainerRunner) {
+            //only report Running once the container has actually entered its run loop:
+            ((SamzaContainerRunner) samzaContainer).addListener(phase -> {
+                if (phase == SamzaContainerRunner.ContainerPhase.RUNNING) {
+                    setStatus(ApplicationStatus.Running);
+                }
+            });
+        }
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
     }
 
     public void setPhase(int phase) {
@@ -105,6 +136,13 @@ public class SpringThreadJob implements StreamJob, InitializingBean, Application
             status = waitForStatus(ApplicationStatus.Running, startWaitMillis);
         }
 
+        if (status == ApplicationStatus.New) {
+            //still starting up (e.g. restoring stores) - not a failure, it will report Running when it is ready:
+            log.info("Samza container thread has not finished starting within {} milliseconds and will continue " +
+                "starting in the background: {}", startWaitMillis, samzaContainer);
+            return;
+        }
+
         if (status != ApplicationStatus.Running) {
             String msg = "Unable to start Samza container thread successfully within " + startWaitMillis +
                 " milliseconds.  Status: " + status;
@@ -114,42 +152,116 @@ public class SpringThreadJob implements StreamJob, InitializingBean, Application
         log.info("Started Samza container thread: {}", status);
     }
 
-    private void doStart() {
+    void doStart() {
 
-        status = ApplicationStatus.New;
+        setStatus(ApplicationStatus.New);
 
-        thread = new Thread() {
-            @Override
-            public void run() {
-                try {
-                    samzaContainer.run();
-                    status = ApplicationStatus.SuccessfulFinish;
-                } catch (Exception e) {
-                    log.error("Samza container startup failed due to exception: " + e.getMessage(), e);
-                    status = ApplicationStatus.UnsuccessfulFinish;
+        Runnable runnable = () -> {
+            runningThread = Thread.currentThread();
+            try {
+                //set from the container thread (and not after launching it) so a fast failure is never overwritten.
+                //SamzaContainerRunners report Running themselves when the run loop is entered:
+                if (!(samzaContainer instanceof SamzaContainerRunner)) {
+                    setStatus(ApplicationStatus.Running);
                 }
+                samzaContainer.run();
+                setStatus(ApplicationStatus.SuccessfulFinish);
+            } catch (Exception e) {
+                log.error("Samza container startup failed due to exception: " + e.getMessage(), e);
+                setStatus(ApplicationStatus.UnsuccessfulFinish);
+            } finally {
+                runningThread = null;
             }
         };
 
-        thread.setName(threadName);
-        thread.start();
+        if (executor != null) {
+            executor.execute(() -> {
+                //pooled threads are renamed for the lifetime of the container to make thread dumps readable:
+                Thread current = Thread.currentThread();
+                String name = current.getName();
+                current.setName(threadName);
+                try {
+                    runnable.run();
+                } finally {
+                    current.setName(name);
+                }
+            });
+        } else {
+            Thread thread = new Thread(runnable);
+            thread.setName(threadName);
+            thread.start();
+        }
+    }
 
-        status = ApplicationStatus.Running;
+    private static boolean isFinished(ApplicationStatus status) {
+        return status == ApplicationStatus.SuccessfulFinish || status == ApplicationStatus.UnsuccessfulFinish;
+    }
+
+    private void setStatus(ApplicationStatus status) {
+
+        List<CompletableFuture<ApplicationStatus>> completed = new ArrayList<>();
+
+        synchronized (statusFutures) {
+            this.status = status;
+            //a finished job will never reach any other status, so all waiters are released:
+            boolean finished = isFinished(status);
+            Iterator<Map.Entry<ApplicationStatus, CompletableFuture<ApplicationStatus>>> i =
+                statusFutures.entrySet().iterator();
+            while (i.hasNext()) {
+                Map.Entry<ApplicationStatus, CompletableFuture<ApplicationStatus>> entry = i.next();
+                if (finished || entry.getKey() == status) {
+                    completed.add(entry.getValue());
+                    i.remove();
+                }
+            }
+        }
+
+        //complete outside of the lock since dependent actions run on this thread:
+        completed.forEach(future -> future.complete(status));
+    }
+
+    /**
+     * Returns a future that completes when this job reaches the specified status, or when the job finishes without
+     * reaching it.  The future's value is the job status at the time it completed, so callers should check it.
+     *
+     * @param status the status to wait for
+     * @return a future that completes when this job reaches the specified status or finishes.
+     */
+    public CompletableFuture<ApplicationStatus> whenStatus(ApplicationStatus status) {
+        Assert.notNull(status, "status cannot be null.");
+        CompletableFuture<ApplicationStatus> future;
+        synchronized (statusFutures) {
+            ApplicationStatus current = this.status;
+            if (current == status || isFinished(current)) {
+                return CompletableFuture.completedFuture(current);
+            }
+            future = statusFutures.computeIfAbsent(status, s -> new CompletableFuture<>());
+        }
+        //the shared future is not handed out so one caller can't complete or cancel it for everyone else:
+        return future.thenApply(Function.identity());
     }
 
     @Override
     public void stop() {
         log.debug("Stopping Samza container...");
         kill();
-        if (stopWaitMillis > 0) {
-            waitForFinish(stopWaitMillis);
+        long waitMillis = stopWaitMillis + getDrainWaitMillis(); //allow for draining before the container stops
+        if (waitMillis > 0) {
+            waitForFinish(waitMillis);
         }
         log.info("Stopped Samza container.");
     }
 
+    long getDrainWaitMillis() {
+        return samzaContainer instanceof SamzaContainerRunner ?
+            ((SamzaContainerRunner) samzaContainer).getDrainWaitMillis() : 0;
+    }
+
     @Override
     public boolean isRunning() {
-        return status == ApplicationStatus.Running;
+        //a container that is still starting is running as far as the lifecycle is concerned so it will be stopped:
+        ApplicationStatus status = this.status;
+        return status == ApplicationStatus.New || status == ApplicationStatus.Running;
     }
 
     @Override
@@ -166,42 +278,29 @@ public class SpringThreadJob implements StreamJob, InitializingBean, Application
     @Override
     public StreamJob kill() {
 
-        try {
-            invokeShutdownNow();
-        } catch (Exception e) {
-            throw new IllegalStateException("Unable to set samzaContainer.runLoop.shutdownNow = true", e);
+        if (samzaContainer instanceof SamzaContainerRunner) {
+            ((SamzaContainerRunner) samzaContainer).shutdown();
+        } else {
+            Thread thread = runningThread;
+            if (thread != null) {
+                thread.interrupt();
+            }
         }
 
         return this;
     }
 
-    private void invokeShutdownNow() {
-        try {
-            Field field = ReflectionUtils.findField(SamzaContainer.class, "runLoop");
-            ReflectionUtils.makeAccessible(field);
-            final Object runLoopObject = field.get(samzaContainer);
-
-            ReflectionUtils.doWithFields(RunLoop.class, aField -> {
-                ReflectionUtils.makeAccessible(aField);
-                aField.setBoolean(runLoopObject, true);
-            }, aField -> aField.getName().endsWith("shutdownNow"));
-        } catch (Exception e) {
-            throw new IllegalStateException("Cannot set samzaContainer.runLoop.shutdownNow field", e);
-        }
-    }
-
     @Override
     public ApplicationStatus waitForFinish(long timeoutMs) {
 
         Assert.isTrue(timeoutMs > 0, "timeoutMs must be greater than zero.");
 
-        try {
-            thread.join(timeoutMs);
-        } catch (InterruptedException e) {
-            throw new IllegalStateException("waitForFinish interrupted.", e);
+        if (this.status == null) { //never started
+            return null;
         }
 
-        return status;
+        //any finished status completes the future:
+        return await(whenStatus(ApplicationStatus.SuccessfulFinish), timeoutMs, "waitForFinish");
     }
 
     @Override
@@ -209,17 +308,20 @@ public class SpringThreadJob implements StreamJob, InitializingBean, Application
 
         Assert.isTrue(timeoutMs > 0, "timeoutMs must be greater than zero.");
 
-        long start = System.currentTimeMillis();
+        return await(whenStatus(status), timeoutMs, "waitForStatus");
+    }
 
-        while (System.currentTimeMillis() - start < timeoutMs && !status.equals(this.status)) {
-            try {
-                Thread.sleep(500);
-            } catch (InterruptedException e) {
-                throw new IllegalStateException("waitForStatus interrupted.", e);
-            }
+    private ApplicationStatus await(CompletableFuture<ApplicationStatus> future, long timeoutMs, String name) {
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return this.status;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(name + " interrupted.", e);
+        } catch (ExecutionException e) { //status futures are never completed exceptionally
+            throw new IllegalStateException(name + " failed.", e.getCause());
         }
-
-        return this.status;
     }
 
     @Override
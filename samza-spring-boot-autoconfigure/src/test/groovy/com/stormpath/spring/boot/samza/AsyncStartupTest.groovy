@@ -0,0 +1,57 @@
+package com.stormpath.spring.boot.samza
+
+import org.apache.samza.job.ApplicationStatus
+import org.apache.samza.job.StreamJob
+import org.junit.Test
+import org.springframework.context.annotation.AnnotationConfigApplicationContext
+import org.springframework.core.env.MapPropertySource
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+import static org.junit.Assert.*
+
+class AsyncStartupTest {
+
+    @Test
+    void testRefreshReturnsBeforeJobModelIsBuilt() {
+
+        def building = new CountDownLatch(1)
+        def release = new CountDownLatch(1)
+        //blocks the JobModel build until released:
+        def coordinator = { config, count, builder ->
+            building.countDown()
+            release.await()
+            return builder.get()
+        } as JobModelCoordinator
+
+        def ctx = new AnnotationConfigApplicationContext()
+        ctx.environment.propertySources.addFirst(new MapPropertySource('test', [
+            'spring.application.name'              : 'async-startup-test',
+            'samza.task.inputs'                    : 'memory.foo',
+            'samza.systems.memory.samza.factory'   : MemorySystemFactory.name,
+            'samza.job.startup.async'              : 'true',
+            'samza.job.startWaitMillis'            : '100'
+        ]))
+        ctx.beanFactory.registerSingleton('samzaJobModelCoordinator', coordinator)
+        ctx.register(SamzaAutoConfiguration, TestTaskConfiguration)
+
+        try {
+            ctx.refresh()
+
+            assertTrue building.await(10, TimeUnit.SECONDS)
+            assertFalse ctx.beanFactory.containsSingleton('samzaJobModel')
+            assertFalse ctx.beanFactory.containsSingleton('samzaContainer')
+            def job = ctx.getBean(StreamJob) as DeferredStreamJob
+            assertNull job.delegate
+            assertEquals ApplicationStatus.New, job.status
+
+            release.countDown()
+            assertEquals ApplicationStatus.Running, job.waitForStatus(ApplicationStatus.Running, 10000)
+            assertTrue job.delegate instanceof SpringThreadJob
+        } finally {
+            release.countDown()
+            ctx.close()
+        }
+    }
+}
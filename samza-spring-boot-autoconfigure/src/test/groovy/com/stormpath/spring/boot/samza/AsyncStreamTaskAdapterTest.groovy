@@ -0,0 +1,153 @@
+package com.stormpath.spring.boot.samza
+
+import com.stormpath.samza.task.AsyncStreamTask
+import org.apache.samza.Partition
+import org.apache.samza.SamzaException
+import org.apache.samza.checkpoint.Checkpoint
+import org.apache.samza.config.MapConfig
+import org.apache.samza.container.TaskName
+import org.apache.samza.system.IncomingMessageEnvelope
+import org.apache.samza.system.OutgoingMessageEnvelope
+import org.apache.samza.system.SystemStream
+import org.apache.samza.system.SystemStreamPartition
+import org.apache.samza.task.MessageCollector
+import org.apache.samza.task.TaskContext
+import org.junit.Test
+
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+import static org.junit.Assert.*
+
+class AsyncStreamTaskAdapterTest {
+
+    @Test
+    void testCheckpointsOnlyAdvancePastCompletedEnvelopes() {
+
+        def ssp = new SystemStreamPartition('memory', 'foo', new Partition(0))
+        def output = new SystemStream('memory', 'bar')
+        def futures = [:]
+
+        def task = new AsyncStreamTaskAdapter({ envelope, collector, coordinator ->
+            def future = new CompletableFuture()
+            futures[envelope.offset] = future
+            return future.thenRun { collector.send(new OutgoingMessageEnvelope(output, envelope.message)) }
+        } as AsyncStreamTask)
+
+        def context = [getTaskName: { new TaskName('Partition 0') }] as TaskContext
+        task.init(new MapConfig(['task.async.max.inflight': '3']), context)
+
+        def sent = []
+        def collector = { sent << it.message } as MessageCollector
+        def previous = new Checkpoint([(ssp): '0'])
+
+        task.process(new IncomingMessageEnvelope(ssp, '1', null, 'a'), collector, null)
+        task.process(new IncomingMessageEnvelope(ssp, '2', null, 'b'), collector, null)
+        assertEquals 2, task.inFlightCount
+
+        //completing the later envelope first must not advance the checkpoint past the earlier one:
+        futures['2'].complete(null)
+        task.window(collector, null)
+        assertEquals(['b'], sent)
+        assertEquals previous, task.getCommittableCheckpoint(new Checkpoint([(ssp): '2']), previous)
+
+        futures['1'].complete(null)
+        task.window(collector, null)
+        assertEquals(['b', 'a'], sent)
+        assertEquals 0, task.inFlightCount
+        assertEquals new Checkpoint([(ssp): '2']), task.getCommittableCheckpoint(new Checkpoint([(ssp): '2']), previous)
+    }
+
+    @Test
+    void testProcessBlocksWhileMaxInFlightEnvelopesArePending() {
+
+        def ssp = new SystemStreamPartition('memory', 'foo', new Partition(0))
+        def futures = [:].asSynchronized()
+
+        def task = new AsyncStreamTaskAdapter({ envelope, collector, coordinator ->
+            def future = new CompletableFuture()
+            futures[envelope.offset] = future
+            return future
+        } as AsyncStreamTask)
+
+        def context = [getTaskName: { new TaskName('Partition 1') }] as TaskContext
+        task.init(new MapConfig(['task.async.max.inflight': '2']), context)
+
+        def collector = {} as MessageCollector
+        task.process(new IncomingMessageEnvelope(ssp, '1', null, 'a'), collector, null)
+        task.process(new IncomingMessageEnvelope(ssp, '2', null, 'b'), collector, null)
+
+        def processed = new CountDownLatch(1)
+        def thread = Thread.start {
+            task.process(new IncomingMessageEnvelope(ssp, '3', null, 'c'), collector, null)
+            processed.countDown()
+        }
+
+        assertFalse processed.await(200, TimeUnit.MILLISECONDS)
+        assertFalse futures.containsKey('3')
+
+        futures['1'].complete(null)
+        assertTrue processed.await(10, TimeUnit.SECONDS)
+        thread.join()
+        assertTrue futures.containsKey('3')
+        assertEquals 2, task.inFlightCount
+    }
+
+    @Test
+    void testFailedEnvelopeFailsTheTaskWithoutAdvancingTheCheckpoint() {
+
+        def ssp = new SystemStreamPartition('memory', 'foo', new Partition(0))
+        def futures = [:]
+
+        def task = new AsyncStreamTaskAdapter({ envelope, collector, coordinator ->
+            def future = new CompletableFuture()
+            futures[envelope.offset] = future
+            return future
+        } as AsyncStreamTask)
+
+        def context = [getTaskName: { new TaskName('Partition 2') }] as TaskContext
+        task.init(new MapConfig([:]), context)
+
+        def collector = {} as MessageCollector
+        def previous = new Checkpoint([(ssp): '0'])
+
+        task.process(new IncomingMessageEnvelope(ssp, '1', null, 'a'), collector, null)
+        task.process(new IncomingMessageEnvelope(ssp, '2', null, 'b'), collector, null)
+
+        futures['2'].complete(null)
+        futures['1'].completeExceptionally(new IllegalStateException('test'))
+
+        try {
+            task.window(collector, null)
+            fail 'The failure should have been rethrown.'
+        } catch (IllegalStateException expected) {
+        }
+
+        //'2' completed, but must be reprocessed after '1' when the container restarts:
+        assertEquals previous, task.getCommittableCheckpoint(new Checkpoint([(ssp): '2']), previous)
+    }
+
+    @Test
+    void testFlushTimesOut() {
+
+        def ssp = new SystemStreamPartition('memory', 'foo', new Partition(0))
+
+        def task = new AsyncStreamTaskAdapter({ envelope, collector, coordinator ->
+            return new CompletableFuture() //never completes
+        } as AsyncStreamTask)
+
+        def context = [getTaskName: { new TaskName('Partition 3') }] as TaskContext
+        task.init(new MapConfig(['task.async.flush.timeout.ms': '100']), context)
+
+        task.process(new IncomingMessageEnvelope(ssp, '1', null, 'a'), {} as MessageCollector, null)
+
+        try {
+            task.flush()
+            fail 'The flush should have timed out.'
+        } catch (SamzaException expected) {
+            assertTrue expected.message.startsWith('Timed out after 100 ms')
+        }
+        assertEquals 1, task.inFlightCount
+    }
+}
@@ -0,0 +1,104 @@
+package com.stormpath.spring.boot.samza
+
+import com.stormpath.samza.task.BatchStreamTask
+import org.apache.samza.Partition
+import org.apache.samza.checkpoint.Checkpoint
+import org.apache.samza.config.MapConfig
+import org.apache.samza.container.TaskName
+import org.apache.samza.system.IncomingMessageEnvelope
+import org.apache.samza.system.SystemStreamPartition
+import org.apache.samza.task.TaskContext
+import org.junit.Test
+
+import static org.junit.Assert.*
+
+class BatchingStreamTaskTest {
+
+    @Test
+    void testBatchesAndCheckpoints() {
+
+        def ssp = new SystemStreamPartition('memory', 'foo', new Partition(0))
+        def taskName = new TaskName('Partition 0')
+        def batches = []
+
+        def task = new BatchingStreamTask({ envelopes, collector, coordinator ->
+            batches << envelopes.collect { it.offset }
+        } as BatchStreamTask)
+
+        def context = [getTaskName: { taskName }] as TaskContext
+        task.init(new MapConfig(['task.batch.size': '2', 'task.batch.linger.ms': '60000']), context)
+
+        def previous = new Checkpoint([(ssp): '0'])
+
+        task.process(new IncomingMessageEnvelope(ssp, '1', null, 'a'), null, null)
+        assertTrue batches.isEmpty()
+        //nothing from this partition has been processed since the previous checkpoint:
+        assertEquals previous, task.getCommittableCheckpoint(new Checkpoint([(ssp): '1']), previous)
+
+        task.process(new IncomingMessageEnvelope(ssp, '2', null, 'b'), null, null)
+        task.process(new IncomingMessageEnvelope(ssp, '3', null, 'c'), null, null)
+        assertEquals([['1', '2']], batches)
+        assertEquals 1, task.pendingCount
+        assertEquals new Checkpoint([(ssp): '2']), task.getCommittableCheckpoint(new Checkpoint([(ssp): '3']), previous)
+
+        task.close()
+        assertEquals([['1', '2'], ['3']], batches)
+        assertEquals new Checkpoint([(ssp): '3']), task.getCommittableCheckpoint(new Checkpoint([(ssp): '3']), previous)
+    }
+
+    @Test
+    void testDelegateCannotModifyTheBatch() {
+
+        def ssp = new SystemStreamPartition('memory', 'foo', new Partition(0))
+
+        def task = new BatchingStreamTask({ envelopes, collector, coordinator ->
+            envelopes.clear()
+        } as BatchStreamTask)
+        def context = [getTaskName: { new TaskName('Partition 0') }] as TaskContext
+        task.init(new MapConfig(['task.batch.size': '2']), context)
+
+        task.process(new IncomingMessageEnvelope(ssp, '1', null, 'a'), null, null)
+        try {
+            task.process(new IncomingMessageEnvelope(ssp, '2', null, 'b'), null, null)
+            fail 'The batch passed to the delegate should be read-only.'
+        } catch (UnsupportedOperationException expected) {
+        }
+        assertEquals 2, task.pendingCount
+    }
+
+    @Test
+    void testFailedBatchIsNotCheckpointed() {
+
+        def ssp = new SystemStreamPartition('memory', 'foo', new Partition(0))
+        def failing = true
+        def batches = []
+
+        def task = new BatchingStreamTask({ envelopes, collector, coordinator ->
+            if (failing) {
+                throw new IllegalStateException('test')
+            }
+            batches << envelopes.collect { it.offset }
+        } as BatchStreamTask)
+
+        def context = [getTaskName: { new TaskName('Partition 1') }] as TaskContext
+        task.init(new MapConfig(['task.batch.size': '2', 'task.batch.linger.ms': '60000']), context)
+
+        def previous = new Checkpoint([(ssp): '0'])
+
+        task.process(new IncomingMessageEnvelope(ssp, '1', null, 'a'), null, null)
+        try {
+            task.process(new IncomingMessageEnvelope(ssp, '2', null, 'b'), null, null)
+            fail 'The failed batch should have been rethrown.'
+        } catch (IllegalStateException expected) {
+        }
+
+        //the failed batch is still pending, so the checkpoint stays at the previous offset:
+        assertEquals 2, task.pendingCount
+        assertEquals previous, task.getCommittableCheckpoint(new Checkpoint([(ssp): '2']), previous)
+
+        failing = false
+        task.close() //retries the pending batch
+        assertEquals([['1', '2']], batches)
+        assertEquals new Checkpoint([(ssp): '2']), task.getCommittableCheckpoint(new Checkpoint([(ssp): '2']), previous)
+    }
+}
@@ -0,0 +1,150 @@
+package com.stormpath.spring.boot.samza
+
+import org.apache.samza.Partition
+import org.apache.samza.config.Config
+import org.apache.samza.config.MapConfig
+import org.apache.samza.container.RunLoop
+import org.apache.samza.container.TaskName
+import org.apache.samza.system.IncomingMessageEnvelope
+import org.apache.samza.system.SystemStreamPartition
+import org.apache.samza.task.InitableTask
+import org.apache.samza.task.MessageCollector
+import org.apache.samza.task.ReadableCoordinator
+import org.apache.samza.task.StreamTask
+import org.apache.samza.task.TaskContext
+import org.apache.samza.task.TaskCoordinator
+import org.junit.After
+import org.junit.Test
+
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+
+import static org.junit.Assert.*
+
+class ExecutorStreamTaskTest {
+
+    ExecutorService executor = Executors.newFixedThreadPool(4)
+
+    @After
+    void shutdownExecutor() {
+        executor.shutdownNow()
+    }
+
+    static RunLoop newRunLoop(long commitMillis) {
+        return new RunLoop(new scala.collection.immutable.HashMap(), null, null, -1L, commitMillis,
+            RunLoop.'$lessinit$greater$default$6'(), 5000L)
+    }
+
+    static long getLastCommitMillis(RunLoop runLoop) {
+        return runLoop.'org$apache$samza$container$RunLoop$$lastCommitMs'()
+    }
+
+    static TaskContext newContext(TaskName taskName) {
+        return [getTaskName: { taskName }, getStore: { String name -> new Object() }] as TaskContext
+    }
+
+    @Test
+    void testProcessesInOrderAndNeverDuringACommit() {
+
+        def runLoop = newRunLoop(20)
+        def barrier = new CommitBarrier(runLoop)
+        def active = new AtomicInteger()
+        def collector = {} as MessageCollector
+
+        def taskNames = (0..<3).collect { new TaskName("Partition $it") }
+        def ssps = (0..<3).collect { new SystemStreamPartition('memory', 'foo', new Partition(it)) }
+        def processed = (0..<3).collect { [].asSynchronized() }
+
+        def tasks = (0..<3).collect { p ->
+            def delegate = { envelope, c, coordinator ->
+                active.incrementAndGet()
+                Thread.sleep(1)
+                processed[p] << envelope.offset
+                active.decrementAndGet()
+            } as StreamTask
+            def adapter = new AsyncStreamTaskAdapter(new ExecutorStreamTask(delegate, executor))
+            def task = new CommitBarrierStreamTask(adapter, barrier)
+            task.init(new MapConfig(['task.async.max.inflight': '5']), newContext(taskNames[p]))
+            return task
+        }
+
+        def expected = (0..<3).collect { [] }
+        int commits = 0
+
+        //the same sequence of calls as RunLoop.run:
+        for (int i = 0; i < 600; i++) {
+            int p = i % 3
+            def coordinator = new ReadableCoordinator(taskNames[p])
+            tasks[p].process(new IncomingMessageEnvelope(ssps[p], "$i".toString(), null, i), collector, coordinator)
+            expected[p] << "$i".toString()
+
+            if (getLastCommitMillis(runLoop) + runLoop.commitMs() < System.currentTimeMillis()) {
+                runLoop.'org$apache$samza$container$RunLoop$$lastCommitMs_$eq'(System.currentTimeMillis())
+                assertEquals 0, active.get()
+                assertEquals 0, tasks.sum { it.delegate.inFlightCount }
+                commits++
+            }
+        }
+
+        tasks.each { it.close() }
+        assertTrue commits > 0
+        assertEquals expected, processed
+    }
+
+    @Test
+    void testForwardsRequestsToTheContainerThread() {
+
+        def taskName = new TaskName('Partition 0')
+        def ssp = new SystemStreamPartition('memory', 'foo', new Partition(0))
+        def collector = {} as MessageCollector
+
+        def delegate = { envelope, c, coordinator ->
+            if (envelope.offset == '1') {
+                coordinator.commit(TaskCoordinator.RequestScope.CURRENT_TASK)
+            }
+        } as StreamTask
+
+        def barrier = new CommitBarrier(newRunLoop(60000))
+        def task = new AsyncStreamTaskAdapter(new ExecutorStreamTask(delegate, executor))
+        task.init(new MapConfig([:]), newContext(taskName))
+        barrier.register(task)
+
+        def first = new ReadableCoordinator(taskName)
+        task.process(new IncomingMessageEnvelope(ssp, '1', null, 'a'), collector, first)
+        task.flush()
+        assertFalse first.requestedCommitTask()
+
+        //the request made on the pool thread is forwarded with the next message, and the commit waits for it:
+        def second = new ReadableCoordinator(taskName)
+        task.process(new IncomingMessageEnvelope(ssp, '2', null, 'b'), collector, second)
+        assertTrue second.requestedCommitTask()
+        barrier.afterCall(second)
+        assertEquals 0, task.inFlightCount
+    }
+
+    @Test
+    void testStoresAreRejected() {
+
+        def task = new ExecutorStreamTask(new StoreUsingTask(), executor)
+
+        try {
+            task.init(new MapConfig([:]), newContext(new TaskName('Partition 0')))
+            fail 'Stores should not be usable on the task executor.'
+        } catch (IllegalStateException expected) {
+            assertTrue expected.message.startsWith("Task Partition 0 cannot use store 'foo'")
+        }
+    }
+
+    static class StoreUsingTask implements StreamTask, InitableTask {
+
+        @Override
+        void init(Config config, TaskContext context) throws Exception {
+            context.getStore('foo')
+        }
+
+        @Override
+        void process(IncomingMessageEnvelope envelope, MessageCollector collector, TaskCoordinator coordinator) {
+        }
+    }
+}
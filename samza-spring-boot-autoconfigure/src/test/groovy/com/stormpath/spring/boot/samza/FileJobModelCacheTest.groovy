@@ -0,0 +1,43 @@
+package com.stormpath.spring.boot.samza
+
+import org.apache.samza.Partition
+import org.apache.samza.config.MapConfig
+import org.apache.samza.container.TaskName
+import org.apache.samza.job.model.ContainerModel
+import org.apache.samza.job.model.JobModel
+import org.apache.samza.job.model.TaskModel
+import org.apache.samza.system.SystemStreamPartition
+import org.junit.Test
+
+import java.nio.file.Files
+
+import static org.junit.Assert.*
+
+class FileJobModelCacheTest {
+
+    static JobModel newJobModel() {
+        def taskName = new TaskName('Partition 0')
+        def ssp = new SystemStreamPartition('memory', 'foo', new Partition(0))
+        def task = new TaskModel(taskName, [ssp] as Set, new Partition(0))
+        def container = new ContainerModel(0, [(taskName): task])
+        return new JobModel(new MapConfig(['job.name': 'test']), [0: container])
+    }
+
+    @Test
+    void testPutAndGet() {
+        def dir = Files.createTempDirectory('jobModelCache').toFile()
+        try {
+            def cache = new FileJobModelCache(new File(dir, 'jobModel'))
+            assertNull cache.get('a')
+
+            def jobModel = newJobModel()
+            cache.put('a', jobModel)
+
+            assertEquals jobModel, cache.get('a')
+            //a different key means the inputs have changed:
+            assertNull cache.get('b')
+        } finally {
+            dir.deleteDir()
+        }
+    }
+}
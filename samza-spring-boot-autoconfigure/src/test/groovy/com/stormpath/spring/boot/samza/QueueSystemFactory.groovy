@@ -0,0 +1,74 @@
+package com.stormpath.spring.boot.samza
+
+import org.apache.samza.config.Config
+import org.apache.samza.metrics.MetricsRegistry
+import org.apache.samza.system.IncomingMessageEnvelope
+import org.apache.samza.system.SystemAdmin
+import org.apache.samza.system.SystemConsumer
+import org.apache.samza.system.SystemFactory
+import org.apache.samza.system.SystemProducer
+import org.apache.samza.system.SystemStreamPartition
+import org.apache.samza.util.SinglePartitionWithoutOffsetsSystemAdmin
+
+import java.util.concurrent.LinkedBlockingQueue
+
+/**
+ * A Samza SystemFactory whose consumer returns the messages added to a static queue, with consecutive offsets starting
+ * at "0" - for testing only.
+ */
+class QueueSystemFactory implements SystemFactory {
+
+    static final LinkedBlockingQueue<Object> MESSAGES = new LinkedBlockingQueue<>()
+    private static long nextOffset = 0
+
+    static synchronized void reset() {
+        MESSAGES.clear()
+        nextOffset = 0
+    }
+
+    private static synchronized String nextOffset() {
+        return String.valueOf(nextOffset++)
+    }
+
+    @Override
+    SystemConsumer getConsumer(String systemName, Config config, MetricsRegistry registry) {
+        return new SystemConsumer() {
+            @Override
+            void start() {
+            }
+
+            @Override
+            void stop() {
+            }
+
+            @Override
+            void register(SystemStreamPartition systemStreamPartition, String offset) {
+            }
+
+            @Override
+            Map<SystemStreamPartition, List<IncomingMessageEnvelope>> poll(
+                Set<SystemStreamPartition> systemStreamPartitions, long timeout) throws InterruptedException {
+
+                Map<SystemStreamPartition, List<IncomingMessageEnvelope>> found = [:]
+                for (SystemStreamPartition ssp : systemStreamPartitions) {
+                    List<Object> messages = []
+                    MESSAGES.drainTo(messages)
+                    found.put(ssp, messages.collect {
+                        new IncomingMessageEnvelope(ssp, nextOffset(), null, it)
+                    })
+                }
+                return found
+            }
+        }
+    }
+
+    @Override
+    SystemProducer getProducer(String systemName, Config config, MetricsRegistry registry) {
+        return new MemorySystemProducer()
+    }
+
+    @Override
+    SystemAdmin getAdmin(String systemName, Config config) {
+        return new SinglePartitionWithoutOffsetsSystemAdmin()
+    }
+}
@@ -0,0 +1,133 @@
+package com.stormpath.spring.boot.samza
+
+import org.apache.samza.Partition
+import org.apache.samza.config.MapConfig
+import org.apache.samza.container.TaskName
+import org.apache.samza.job.model.ContainerModel
+import org.apache.samza.job.model.JobModel
+import org.apache.samza.job.model.TaskModel
+import org.apache.samza.system.SystemStreamPartition
+import org.junit.Test
+import org.springframework.context.support.StaticApplicationContext
+
+import static org.junit.Assert.*
+
+class RebalancingStreamJobTest {
+
+    static final int TASK_COUNT = 4
+
+    //round-robin, like GroupByContainerCount:
+    static JobModel jobModel(int containerCount) {
+        def containers = (0..<containerCount).collectEntries { int containerId ->
+            def tasks = (0..<TASK_COUNT).findAll { it % containerCount == containerId }.collectEntries {
+                def ssp = new SystemStreamPartition('kafka', 'foo', new Partition(it))
+                def name = new TaskName("Partition $it")
+                [(name): new TaskModel(name, [ssp] as Set, new Partition(it))]
+            }
+            [(containerId): new ContainerModel(containerId, tasks)]
+        }
+        new JobModel(new MapConfig(), containers)
+    }
+
+    static RebalancingStreamJob newJob(int memberId, List<Integer> memberIds, List<SpringThreadJob> jobs) {
+        def job = new RebalancingStreamJob(memberId, memberIds, jobModel(memberIds.size()), { jobModel(it) },
+            { model, index ->
+                def delegate = new SpringThreadJob({
+                    try {
+                        Thread.sleep(Long.MAX_VALUE)
+                    } catch (InterruptedException ignored) {
+                    }
+                } as Runnable)
+                jobs << delegate
+                delegate
+            })
+        job.applicationContext = new StaticApplicationContext()
+        job.afterPropertiesSet()
+        return job
+    }
+
+    static void waitUntilStarted(RebalancingStreamJob job) {
+        long deadline = System.currentTimeMillis() + 10000
+        while (job.joining && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10)
+        }
+        assertFalse job.joining
+    }
+
+    @Test
+    void testContainerIsOnlyRestartedIfItsTasksChanged() {
+
+        List<SpringThreadJob> jobs = []
+        def job = newJob(2, [0, 2], jobs)
+        job.rebalanceDelayMillis = 0
+        job.start()
+        waitUntilStarted(job)
+        assertEquals 1, jobs.size()
+        assertEquals 0, job.restartCount
+
+        //same count and rank:
+        job.rebalance([1, 2])
+        assertEquals 1, jobs.size()
+
+        //scale out - container 1 of 3 only keeps 'Partition 1':
+        job.rebalance([0, 2, 5])
+        assertEquals 1, job.containerIndex
+        assertEquals 1, job.restartCount
+        assertEquals 2, jobs.size()
+        assertFalse jobs[0].running
+        assertTrue jobs[1].running
+        assertEquals([new TaskName('Partition 1')] as Set, job.jobModel.containers[1].tasks.keySet())
+
+        //not a live member (e.g. an expired session) - keep running:
+        job.rebalance([0, 5])
+        assertEquals 2, jobs.size()
+
+        job.stop()
+        assertFalse jobs[1].running
+        job.destroy()
+    }
+
+    @Test
+    void testJoiningMemberWaitsForTheOtherMembersToRebalance() {
+
+        List<SpringThreadJob> jobs = []
+        def job = newJob(5, [0, 5], jobs)
+        job.rebalanceDelayMillis = 500
+        job.start()
+
+        //the other members still run our tasks:
+        assertTrue job.joining
+        assertTrue jobs.isEmpty()
+        assertFalse job.running
+
+        //another member joins while we wait - the wait starts over, like the other members' delay:
+        Thread.sleep(200)
+        job.onMembershipChanged([0, 3, 5])
+        Thread.sleep(400)
+        assertTrue job.joining
+        assertTrue jobs.isEmpty()
+
+        waitUntilStarted(job)
+        assertEquals 2, job.containerIndex
+        assertEquals 0, job.restartCount
+        assertEquals 1, jobs.size()
+        assertEquals([new TaskName('Partition 2')] as Set, job.jobModel.containers[2].tasks.keySet())
+
+        job.stop()
+        assertFalse jobs[0].running
+        job.destroy()
+    }
+
+    @Test
+    void testOnlyMemberStartsRightAway() {
+
+        List<SpringThreadJob> jobs = []
+        def job = newJob(0, [0], jobs)
+        job.start()
+        assertFalse job.joining
+        assertEquals 1, jobs.size()
+
+        job.stop()
+        job.destroy()
+    }
+}
@@ -0,0 +1,62 @@
+package com.stormpath.spring.boot.samza
+
+import org.junit.Test
+import org.springframework.core.env.CompositePropertySource
+import org.springframework.core.env.MapPropertySource
+import org.springframework.core.env.PropertySource
+import org.springframework.core.env.StandardEnvironment
+
+import static org.junit.Assert.*
+
+class SamzaAutoConfigurationTest {
+
+    @Test
+    void testParseContainerIdsWithSingleId() {
+        assertEquals([3], SamzaAutoConfiguration.parseContainerIds('3'))
+    }
+
+    @Test
+    void testParseContainerIdsWithRange() {
+        assertEquals([0, 1, 2, 3, 4, 5, 6, 7], SamzaAutoConfiguration.parseContainerIds('0-7'))
+    }
+
+    @Test
+    void testParseContainerIdsWithListAndRanges() {
+        assertEquals([0, 2, 4, 5, 6], SamzaAutoConfiguration.parseContainerIds(' 0, 2 ,4 - 6'))
+    }
+
+    @Test(expected = IllegalArgumentException)
+    void testParseContainerIdsWithDuplicates() {
+        SamzaAutoConfiguration.parseContainerIds('0-3,2')
+    }
+
+    @Test(expected = IllegalArgumentException)
+    void testParseContainerIdsWithInvertedRange() {
+        SamzaAutoConfiguration.parseContainerIds('7-0')
+    }
+
+    @Test(expected = IllegalArgumentException)
+    void testParseContainerIdsWithInvalidId() {
+        SamzaAutoConfiguration.parseContainerIds('a')
+    }
+
+    @Test(expected = IllegalArgumentException)
+    void testParseContainerIdsWithEmptyValue() {
+        SamzaAutoConfiguration.parseContainerIds(' , ')
+    }
+
+    @Test
+    void testFindPropertyNamesStartingWith() {
+        def env = new StandardEnvironment()
+        def composite = new CompositePropertySource('composite')
+        composite.addPropertySource(new MapPropertySource('nested', ['samza.b': '2', 'other.b': '2']))
+        composite.addPropertySource(new PropertySource<Object>('notEnumerable') {
+            Object getProperty(String name) { null }
+        })
+        env.propertySources.addFirst(composite)
+        env.propertySources.addFirst(new MapPropertySource('first', ['samza.a': '1', 'samzaa': 'x']))
+
+        assertEquals(['samza.a', 'samza.b'] as Set,
+            SamzaAutoConfiguration.findPropertyNamesStartingWith(env, SamzaAutoConfiguration.SAMZA_PROPERTY_PREFIX))
+    }
+}
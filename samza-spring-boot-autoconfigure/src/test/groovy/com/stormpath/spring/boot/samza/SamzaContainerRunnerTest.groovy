@@ -0,0 +1,367 @@
+package com.stormpath.spring.boot.samza
+
+import com.stormpath.spring.boot.samza.SamzaContainerRunner.ContainerPhase
+import org.apache.samza.checkpoint.Checkpoint
+import org.apache.samza.checkpoint.CheckpointManager
+import org.apache.samza.container.SamzaContainer
+import org.apache.samza.container.TaskName
+import org.apache.samza.container.grouper.stream.GroupBySystemStreamPartitionFactory
+import org.apache.samza.job.ApplicationStatus
+import org.apache.samza.job.StreamJob
+import org.apache.samza.job.model.ContainerModel
+import org.apache.samza.metrics.MetricsRegistry
+import org.apache.samza.metrics.MetricsRegistryMap
+import org.apache.samza.system.IncomingMessageEnvelope
+import org.apache.samza.task.MessageCollector
+import org.apache.samza.task.StreamTask
+import org.apache.samza.task.TaskCoordinator
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import org.springframework.beans.factory.BeanInitializationException
+import org.springframework.context.annotation.AnnotationConfigApplicationContext
+import org.springframework.context.annotation.Bean
+import org.springframework.context.annotation.Configuration
+import org.springframework.context.annotation.Scope
+import org.springframework.core.env.MapPropertySource
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.CyclicBarrier
+import java.util.concurrent.TimeUnit
+
+import static org.junit.Assert.*
+
+class SamzaContainerRunnerTest {
+
+    static final String GROUP = SamzaContainerRunner.METRICS_GROUP
+
+    //the task beans of the current test call these when they are created and for each message:
+    static volatile Closure onCreate = {}
+    static volatile Closure onProcess = {}
+    static final List<String> processed = [].asSynchronized()
+
+    AnnotationConfigApplicationContext ctx
+    SpringThreadJob job //stopped after each test, so a failed test doesn't leave its container consuming messages
+    RecordingCheckpointManager checkpoints = new RecordingCheckpointManager()
+    ContainerAssignmentListener listener //registered as a bean if set
+
+    @Before
+    void setUp() {
+        QueueSystemFactory.reset()
+        processed.clear()
+        onCreate = {}
+        onProcess = {}
+    }
+
+    @After
+    void tearDown() {
+        job?.stop()
+        ctx?.close()
+    }
+
+    SamzaContainerRunner newRunner(Map<String, Object> properties = [:]) {
+        ctx = new AnnotationConfigApplicationContext()
+        ctx.environment.propertySources.addFirst(new MapPropertySource('test', [
+            'spring.application.name'          : 'container-runner-test',
+            'samza.task.inputs'                : 'queue.foo',
+            'samza.systems.queue.samza.factory': QueueSystemFactory.name
+        ] + properties))
+        ctx.beanFactory.registerSingleton('samzaCheckpointManager', checkpoints)
+        //the containers are run by the tests, not by the application context:
+        ctx.beanFactory.registerSingleton('samzaJob', [:] as StreamJob)
+        if (listener != null) {
+            ctx.beanFactory.registerSingleton('testAssignmentListener', listener)
+        }
+        ctx.register(SamzaAutoConfiguration, RecordingTaskConfiguration)
+        ctx.refresh()
+        return new SamzaContainerRunner(ctx.getBean(SamzaContainer))
+    }
+
+    //on its own thread, since the run loop's shutdown hook waits for the thread that ran it to exit:
+    static void run(SamzaContainerRunner runner) {
+        Throwable failure = null
+        def thread = new Thread({
+            try {
+                runner.run()
+            } catch (Throwable t) {
+                failure = t
+            }
+        } as Runnable)
+        thread.start()
+        thread.join(20000)
+        assertFalse 'Container did not stop.', thread.alive
+        if (failure != null) {
+            throw failure
+        }
+    }
+
+    static MetricsRegistryMap getRegistry(SamzaContainerRunner runner) {
+        return runner.container.'org$apache$samza$container$SamzaContainer$$metrics'.registry() as MetricsRegistryMap
+    }
+
+    static Object getMetricValue(SamzaContainerRunner runner, String name) {
+        def metric = getRegistry(runner).getGroup(GROUP).get(name)
+        assertNotNull "No metric $name".toString(), metric
+        return metric.hasProperty('count') ? metric.count : metric.value
+    }
+
+    @Test
+    void testKilledContainerDrainsBufferedEnvelopes() {
+
+        def runner = newRunner()
+        runner.drainWaitMillis = 10000
+
+        //all messages are buffered by the first poll, and the container is killed while processing the first one:
+        (0..<10).each { QueueSystemFactory.MESSAGES.put("message $it".toString()) }
+        onProcess = { IncomingMessageEnvelope envelope ->
+            if (envelope.offset == '0') {
+                runner.shutdown()
+            }
+        }
+
+        run(runner)
+
+        assertEquals ContainerPhase.STOPPED, runner.containerPhase
+        assertEquals((0..<10).collect { it as String }, processed)
+        assertEquals 9L, getMetricValue(runner, 'drained-envelopes')
+        assertEquals 0, getMetricValue(runner, 'undrained-envelopes')
+        assertTrue getMetricValue(runner, 'draining-ms') >= 0
+
+        //the drained envelopes are checkpointed before shutdown:
+        Checkpoint checkpoint = checkpoints.written[new TaskName('Partition 0')]
+        assertNotNull checkpoint
+        assertEquals(['9'], checkpoint.offsets.values() as List)
+    }
+
+    @Test
+    void testDrainOnlyProcessesEnvelopesBufferedWhenItStarted() {
+
+        def runner = newRunner()
+        runner.drainWaitMillis = 10000
+
+        (0..<5).each { QueueSystemFactory.MESSAGES.put("message $it".toString()) }
+        boolean killed = false
+        onProcess = { IncomingMessageEnvelope envelope ->
+            if (!killed) {
+                killed = true
+                runner.shutdown()
+            }
+            //choose() keeps polling while draining - these must be left for the next owner of the partition:
+            QueueSystemFactory.MESSAGES.put('late ' + envelope.offset)
+        }
+
+        run(runner)
+
+        //at most the 4 buffered envelopes and the one per partition held by the chooser:
+        long drained = getMetricValue(runner, 'drained-envelopes')
+        assertTrue "Drained $drained envelopes".toString(), drained >= 4 && drained <= 5
+        assertEquals drained + 1, processed.size()
+        assertEquals processed.last(), checkpoints.written[new TaskName('Partition 0')].offsets.values()[0]
+    }
+
+    @Test
+    void testDrainStopsAtTheDeadline() {
+
+        def runner = newRunner()
+        runner.drainWaitMillis = 200
+
+        (0..<50).each { QueueSystemFactory.MESSAGES.put("message $it".toString()) }
+        onProcess = { IncomingMessageEnvelope envelope ->
+            if (envelope.offset == '0') {
+                runner.shutdown()
+            }
+            Thread.sleep(50)
+        }
+
+        long start = System.currentTimeMillis()
+        run(runner)
+        assertTrue System.currentTimeMillis() - start < 5000
+
+        long drained = getMetricValue(runner, 'drained-envelopes')
+        int undrained = getMetricValue(runner, 'undrained-envelopes')
+        assertTrue "Drained $drained envelopes".toString(), drained > 0 && drained < 10
+        assertTrue undrained > 0
+        assertEquals drained + 1, processed.size()
+
+        //only what was processed is checkpointed:
+        assertEquals processed.last(), checkpoints.written[new TaskName('Partition 0')].offsets.values()[0]
+    }
+
+    @Test
+    void testJobIsOnlyRunningOnceTheRunLoopIsEntered() {
+
+        def runner = newRunner()
+        def phases = [].asSynchronized()
+        def restored = new CountDownLatch(1)
+        //a slow store restoration:
+        runner.addListener({ ContainerPhase phase ->
+            phases << phase
+            if (phase == ContainerPhase.RESTORING) {
+                restored.await(10, TimeUnit.SECONDS)
+            }
+        } as SamzaContainerRunner.ContainerPhaseListener)
+
+        job = new SpringThreadJob(runner)
+        job.applicationContext = ctx
+        job.startWaitMillis = 100
+        job.afterPropertiesSet()
+
+        job.start() //doesn't fail, the container keeps starting in the background
+        assertEquals ApplicationStatus.New, job.status
+        assertTrue job.running
+        assertEquals 'RESTORING', getMetricValue(runner, 'phase')
+
+        Thread.sleep(100)
+        restored.countDown()
+        assertEquals ApplicationStatus.Running, job.waitForStatus(ApplicationStatus.Running, 10000)
+        assertEquals([ContainerPhase.STARTING, ContainerPhase.RESTORING, ContainerPhase.INITIALIZING,
+                      ContainerPhase.RUNNING], phases)
+        assertEquals 'RUNNING', getMetricValue(runner, 'phase')
+
+        long restoringMillis = getMetricValue(runner, 'restoring-ms')
+        assertTrue "Restored in $restoringMillis ms".toString(), restoringMillis >= 100
+        assertTrue getMetricValue(runner, 'starting-ms') >= 0
+        assertTrue getMetricValue(runner, 'initializing-ms') >= 0
+        assertTrue getMetricValue(runner, 'startup-ms') >= restoringMillis
+
+        job.stop()
+        assertEquals ApplicationStatus.SuccessfulFinish, job.waitForFinish(10000)
+        assertEquals([ContainerPhase.STOPPING, ContainerPhase.STOPPED], phases.drop(4))
+        assertTrue getMetricValue(runner, 'stopping-ms') >= 0
+    }
+
+    static final Map<String, Object> THREE_TASKS = [
+        'samza.task.inputs'                              : 'queue.foo,queue.bar,queue.baz',
+        'samza.job.systemstreampartition.grouper.factory': GroupBySystemStreamPartitionFactory.name
+    ]
+
+    @Test
+    void testTaskBeansAreCreatedConcurrently() {
+
+        def runner = newRunner(THREE_TASKS)
+        runner.taskCreationParallelism = 3
+
+        //only completes if all three task beans are created at the same time:
+        def allCreating = new CyclicBarrier(3)
+        def threads = [].asSynchronized()
+        onCreate = {
+            threads << Thread.currentThread().name
+            allCreating.await(10, TimeUnit.SECONDS)
+            Thread.sleep(50)
+        }
+        onProcess = { runner.shutdown() }
+        QueueSystemFactory.MESSAGES.put('message')
+
+        run(runner)
+
+        assertEquals ContainerPhase.STOPPED, runner.containerPhase
+        assertEquals 3, threads.size()
+        threads.each { assertTrue it, it.startsWith('samza-task-create-') }
+
+        def taskInstances = runner.runLoop.taskInstances().values()
+        assertEquals 3, taskInstances.size()
+        taskInstances.foreach({ taskInstance ->
+            def registry = taskInstance.context().metricsRegistry as MetricsRegistryMap
+            def gauge = registry.getGroup(ConfigTimeStreamTask.METRICS_GROUP).get('delegate-creation-ms')
+            long creationMillis = gauge.value
+            assertTrue "Created in $creationMillis ms".toString(), creationMillis >= 50
+        } as scala.Function1)
+    }
+
+    @Test
+    void testTaskBeanCreationFailureFailsTheContainer() {
+
+        def runner = newRunner(THREE_TASKS)
+        runner.taskCreationParallelism = 3
+        onCreate = { throw new IllegalStateException('test') }
+
+        try {
+            run(runner)
+            fail 'The container should fail if a task bean cannot be created.'
+        } catch (BeanInitializationException expected) {
+            //the bean creation failure itself, not the future's CompletionException:
+            assertTrue expected.message.startsWith('Unable to acquire Samza StreamTask bean.')
+            assertTrue expected.mostSpecificCause instanceof IllegalStateException
+        }
+        assertEquals ContainerPhase.FAILED, runner.containerPhase
+    }
+
+    @Test
+    void testAssignmentListenersCanPublishContainerMetrics() {
+
+        def assigned = []
+        listener = new ContainerAssignmentListener() {
+            @Override
+            void containerAssigned(ContainerModel containerModel) {
+                assigned << containerModel.containerId
+            }
+
+            @Override
+            void containerCreated(ContainerModel containerModel, MetricsRegistry registry) {
+                registry.newGauge('test', 'container-id', containerModel.containerId)
+            }
+        }
+
+        def runner = newRunner()
+
+        assertEquals([0], assigned)
+        assertEquals 0, getRegistry(runner).getGroup('test').get('container-id').value
+    }
+
+    @Configuration
+    static class RecordingTaskConfiguration {
+
+        @Bean
+        @Scope('prototype')
+        StreamTask samzaStreamTask() {
+            onCreate.call()
+            return new RecordingTask()
+        }
+    }
+
+    static class RecordingTask implements StreamTask {
+
+        @Override
+        void process(IncomingMessageEnvelope envelope, MessageCollector collector, TaskCoordinator coordinator) {
+            onProcess.call(envelope)
+            processed << envelope.offset
+        }
+    }
+
+    static class RecordingCheckpointManager implements CheckpointManager {
+
+        final Map<TaskName, Checkpoint> written = new ConcurrentHashMap<>()
+
+        @Override
+        void start() {
+        }
+
+        @Override
+        void register(TaskName taskName) {
+        }
+
+        @Override
+        void writeCheckpoint(TaskName taskName, Checkpoint checkpoint) {
+            written.put(taskName, checkpoint)
+        }
+
+        @Override
+        Checkpoint readLastCheckpoint(TaskName taskName) {
+            return null
+        }
+
+        @Override
+        Map<TaskName, Integer> readChangeLogPartitionMapping() {
+            return [:]
+        }
+
+        @Override
+        void writeChangeLogPartitionMapping(Map<TaskName, Integer> mapping) {
+        }
+
+        @Override
+        void stop() {
+        }
+    }
+}
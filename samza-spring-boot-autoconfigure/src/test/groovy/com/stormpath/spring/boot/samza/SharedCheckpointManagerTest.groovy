@@ -0,0 +1,103 @@
+package com.stormpath.spring.boot.samza
+
+import org.apache.samza.checkpoint.CheckpointManager
+import org.apache.samza.container.TaskName
+import org.junit.Test
+
+import static org.junit.Assert.*
+
+class SharedCheckpointManagerTest {
+
+    @Test
+    void testOnlyFirstStartAndLastStopReachTheDelegate() {
+
+        def calls = []
+        def delegate = [
+            start   : { calls << 'start' },
+            stop    : { calls << 'stop' },
+            register: { TaskName tn -> calls << "register ${tn.taskName}".toString() }
+        ] as CheckpointManager
+
+        def shared = new SharedCheckpointManager(delegate)
+        def first = shared.newContainerCheckpointManager()
+        def second = shared.newContainerCheckpointManager()
+
+        first.register(new TaskName('Partition 0'))
+        first.start()
+        second.register(new TaskName('Partition 0'))
+        second.start() //no new tasks, the running manager is shared as is
+        assertEquals(['register Partition 0', 'start'], calls)
+        assertEquals 2, shared.startCount
+
+        calls.clear()
+        first.stop()
+        first.stop() //only counted once
+        assertTrue calls.isEmpty()
+        assertEquals 1, shared.startCount
+
+        second.stop()
+        assertEquals(['stop'], calls)
+        assertEquals 0, shared.startCount
+    }
+
+    @Test
+    void testStartWithUnregisteredTasksFails() {
+
+        def calls = []
+        def delegate = [
+            start   : { calls << 'start' },
+            stop    : { calls << 'stop' },
+            register: { TaskName tn -> }
+        ] as CheckpointManager
+
+        def shared = new SharedCheckpointManager(delegate)
+        def first = shared.newContainerCheckpointManager()
+        def second = shared.newContainerCheckpointManager()
+
+        first.register(new TaskName('Partition 0'))
+        first.start()
+        second.register(new TaskName('Partition 1'))
+        try {
+            second.start()
+            fail 'The running manager cannot be restarted for new tasks.'
+        } catch (IllegalStateException expected) {
+        }
+
+        //never stopped while the first container uses it:
+        assertEquals(['start'], calls)
+        assertEquals 1, shared.startCount
+    }
+
+    @Test
+    void testTasksOfAllContainersAreRegisteredBeforeTheFirstStart() {
+
+        def calls = []
+        def delegate = [
+            start   : { calls << 'start' },
+            stop    : { calls << 'stop' },
+            register: { TaskName tn -> calls << "register ${tn.taskName}".toString() }
+        ] as CheckpointManager
+
+        def shared = new SharedCheckpointManager(delegate)
+        shared.register([new TaskName('Partition 0'), new TaskName('Partition 1')])
+        def first = shared.newContainerCheckpointManager()
+        def second = shared.newContainerCheckpointManager()
+
+        first.register(new TaskName('Partition 0'))
+        first.start()
+        second.register(new TaskName('Partition 1'))
+        second.start()
+        assertEquals(['register Partition 0', 'register Partition 1'] as Set, calls.take(2) as Set)
+        assertEquals(['start'], calls.drop(2))
+        assertEquals 2, shared.startCount
+
+        //a restart of the job starts with all tasks again:
+        first.stop()
+        second.stop()
+        calls.clear()
+        second.register(new TaskName('Partition 1'))
+        second.start()
+        assertEquals 'start', calls.last()
+        assertEquals 3, calls.size()
+    }
+}
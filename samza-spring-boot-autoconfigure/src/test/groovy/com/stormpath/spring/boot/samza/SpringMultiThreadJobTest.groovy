@@ -0,0 +1,65 @@
+package com.stormpath.spring.boot.samza
+
+import org.apache.samza.job.ApplicationStatus
+import org.junit.Test
+import org.springframework.context.support.StaticApplicationContext
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+import static org.junit.Assert.*
+
+class SpringMultiThreadJobTest {
+
+    static SpringMultiThreadJob newJob(Map<Integer, Runnable> runnables) {
+        def job = new SpringMultiThreadJob(runnables)
+        job.applicationContext = new StaticApplicationContext()
+        job.startWaitMillis = 10000
+        job.stopWaitMillis = 10000
+        job.afterPropertiesSet()
+        return job
+    }
+
+    static Runnable untilInterrupted() {
+        return {
+            try {
+                Thread.sleep(60000)
+            } catch (InterruptedException ignored) {
+                //killed - finish successfully
+            }
+        } as Runnable
+    }
+
+    @Test
+    void testStartAndStopAllContainers() {
+        def job = newJob([0: untilInterrupted(), 1: untilInterrupted(), 2: untilInterrupted()])
+
+        job.start()
+        assertEquals ApplicationStatus.Running, job.status
+        assertTrue job.running
+
+        job.stop()
+        assertEquals ApplicationStatus.SuccessfulFinish, job.status
+        assertFalse job.running
+    }
+
+    @Test
+    void testOneFailedContainerFailsTheJob() {
+        def latch = new CountDownLatch(1)
+        def job = newJob([0: untilInterrupted(), 1: { latch.await(); throw new IllegalStateException('test') }])
+
+        job.start()
+        assertEquals ApplicationStatus.Running, job.status
+
+        //the other container is still running, but the combined status doesn't wait for it:
+        def finished = job.whenStatus(ApplicationStatus.SuccessfulFinish)
+        latch.countDown()
+        assertEquals ApplicationStatus.UnsuccessfulFinish, finished.get(10, TimeUnit.SECONDS)
+        assertEquals ApplicationStatus.UnsuccessfulFinish, job.status
+        assertTrue job.running
+
+        job.stop()
+        assertEquals ApplicationStatus.UnsuccessfulFinish, job.status
+        assertFalse job.running
+    }
+}
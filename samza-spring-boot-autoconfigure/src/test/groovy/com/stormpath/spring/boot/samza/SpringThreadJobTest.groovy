@@ -0,0 +1,61 @@
+package com.stormpath.spring.boot.samza
+
+import org.apache.samza.job.ApplicationStatus
+import org.junit.Test
+import org.springframework.context.support.StaticApplicationContext
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+import static org.junit.Assert.*
+
+class SpringThreadJobTest {
+
+    static SpringThreadJob newJob(Runnable runnable) {
+        def job = new SpringThreadJob(runnable)
+        job.applicationContext = new StaticApplicationContext()
+        job.startWaitMillis = 10000
+        job.afterPropertiesSet()
+        return job
+    }
+
+    @Test
+    void testStartReturnsWhenRunning() {
+        def latch = new CountDownLatch(1)
+        def job = newJob({ latch.await() } as Runnable)
+
+        long start = System.currentTimeMillis()
+        job.start()
+        assertTrue System.currentTimeMillis() - start < 500
+        assertTrue job.running
+
+        def finished = job.whenStatus(ApplicationStatus.SuccessfulFinish)
+        assertFalse finished.done
+
+        latch.countDown()
+        assertEquals ApplicationStatus.SuccessfulFinish, finished.get(10, TimeUnit.SECONDS)
+        assertEquals ApplicationStatus.SuccessfulFinish, job.waitForFinish(1000)
+    }
+
+    @Test
+    void testWaitForFinishReturnsWhenContainerFails() {
+        def job = newJob({ throw new IllegalStateException('test') } as Runnable)
+
+        long start = System.currentTimeMillis()
+        job.doStart()
+        assertEquals ApplicationStatus.UnsuccessfulFinish, job.waitForFinish(10000)
+        assertTrue System.currentTimeMillis() - start < 5000
+        //finished jobs release waiters for any status:
+        assertEquals ApplicationStatus.UnsuccessfulFinish, job.whenStatus(ApplicationStatus.Running).get()
+    }
+
+    @Test
+    void testKillInterruptsRunnable() {
+        def job = newJob({ Thread.sleep(60000) } as Runnable)
+        job.start()
+
+        job.kill()
+        //sleep is interrupted, so the runnable fails:
+        assertEquals ApplicationStatus.UnsuccessfulFinish, job.waitForFinish(10000)
+    }
+}
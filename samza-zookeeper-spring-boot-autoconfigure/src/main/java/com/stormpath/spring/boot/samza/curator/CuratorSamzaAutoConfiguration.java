@@ -1,22 +1,34 @@
 package com.stormpath.spring.boot.samza.curator;
 
 import com.stormpath.curator.framework.recipes.nodes.SequentialGroupMember;
+import com.stormpath.samza.curator.locality.ZookeeperContainerLocality;
+import com.stormpath.spring.boot.samza.ContainerAssignmentListener;
+import com.stormpath.spring.boot.samza.ContainerMembership;
+import com.stormpath.spring.boot.samza.curator.model.ZookeeperJobModelCoordinator;
 import org.apache.curator.framework.CuratorFramework;
+import org.apache.samza.job.model.ContainerModel;
+import org.apache.samza.metrics.MetricsRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.AutoConfigureOrder;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.util.Assert;
 
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
 @Configuration
 @ConditionalOnProperty(name = {"samza.enabled", "spring.cloud.zookeeper.enabled", "samza.zookeeper.enabled"}, matchIfMissing = true)
 @AutoConfigureOrder(1)
 public class CuratorSamzaAutoConfiguration {
 
+    public static final String CLAIM_METRICS_GROUP = SequentialGroupMember.class.getName();
+
     private static final byte[] EMPTY_PAYLOAD = new byte[0];
 
     @SuppressWarnings("SpringJavaAutowiringInspection")
@@ -32,20 +44,48 @@ public class CuratorSamzaAutoConfiguration {
     @Value("#{ @environment['samza.zookeeper.containers.namespace.suffix'] ?: '/containers' }")
     private String samzaContainerMembershipPathSuffix;
 
-    @Bean
-    @ConditionalOnMissingBean(name = "samzaContainerMembershipPath")
-    public String samzaContainerMembershipPath() {
+    @Value("#{ @environment['samza.zookeeper.containers.claimTimeoutMillis'] ?: 30000 }")
+    private long claimTimeoutMillis;
+
+    //claim the id this host had before so it gets the same tasks and can reuse its local stores:
+    @Value("#{ @environment['samza.zookeeper.containers.locality.enabled'] ?: false }")
+    private boolean localityEnabled;
+
+    @Value("#{ @environment['samza.zookeeper.containers.locality.host'] ?: null }")
+    private String localityHost; //defaults to the local host name
+
+    @Value("#{ @environment['samza.zookeeper.coordinator.path'] ?: null }")
+    private String samzaJobCoordinatorPath;
+
+    //how long containers wait for the leader to publish the JobModel before computing it themselves:
+    @Value("#{ @environment['samza.zookeeper.coordinator.waitMillis'] ?: 30000 }")
+    private long coordinatorWaitMillis;
+
+    @Value("#{ @environment['samza.container.local.ids'] ?: null }")
+    private String samzaContainerLocalIds;
+
+    @Value("#{ @environment['samza.container.local.count'] ?: 0 }")
+    private int samzaContainerLocalCount;
+
+    private String getJobPath() {
         Assert.hasText(samzaJobName, "samza.job.name or spring.application.name must be defined.");
         Assert.hasText(samzaContainerMembershipPathPrefix,
             "samza.zookeeper.containers.namespace.prefix cannot be a null or empty string.");
-        Assert.hasText(samzaContainerMembershipPathSuffix,
-            "samza.zookeeper.containers.namespace.suffix cannot be a null or empty string.");
 
         String val = samzaContainerMembershipPathPrefix;
         if (!val.endsWith("/")) {
             val += "/";
         }
-        val += samzaJobName;
+        return val + samzaJobName;
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(name = "samzaContainerMembershipPath")
+    public String samzaContainerMembershipPath() {
+        Assert.hasText(samzaContainerMembershipPathSuffix,
+            "samza.zookeeper.containers.namespace.suffix cannot be a null or empty string.");
+
+        String val = getJobPath();
         if (!samzaContainerMembershipPathSuffix.startsWith("/")) {
             val += "/";
         }
@@ -57,14 +97,100 @@ public class CuratorSamzaAutoConfiguration {
     @Bean(initMethod = "start", destroyMethod = "close")
     @ConditionalOnMissingBean(name = "samzaContainerGroupMember")
     public SequentialGroupMember samzaContainerGroupMember() {
-        String membersBasePath = samzaContainerMembershipPath();
-        String locksBasePath = membersBasePath + "-locks";
-        return new SequentialGroupMember(curator, membersBasePath, locksBasePath, EMPTY_PAYLOAD);
+        SequentialGroupMember member = new SequentialGroupMember(curator, samzaContainerMembershipPath(), EMPTY_PAYLOAD);
+        member.setClaimTimeoutMillis(claimTimeoutMillis);
+        if (localityEnabled) {
+            member.setPreferredIds(samzaContainerLocality().getPreviousIds());
+        }
+        return member;
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(name = "samza.zookeeper.containers.locality.enabled")
+    public ZookeeperContainerLocality samzaContainerLocality() {
+        String host = localityHost;
+        if (host == null) {
+            try {
+                host = InetAddress.getLocalHost().getHostName();
+            } catch (UnknownHostException e) {
+                String msg = "Unable to determine the local host name, set samza.zookeeper.containers.locality.host.";
+                throw new IllegalStateException(msg, e);
+            }
+        }
+        return new ZookeeperContainerLocality(curator, getJobPath() + "/locality", host);
+    }
+
+    //records the container's index in the JobModel, which determines its tasks: the claimed member id if the container
+    //count is static, but the member's rank among the live members if the containers follow the members.  In that
+    //case a restarted member prefers the id that had its previous rank, which gets it the same tasks as long as the
+    //member ids are dense (e.g. a member restarting within samza.job.rebalance.delayMillis):
+    @Bean
+    @ConditionalOnMissingBean(name = "samzaContainerLocalityListener")
+    @ConditionalOnProperty(name = "samza.zookeeper.containers.locality.enabled")
+    public ContainerAssignmentListener samzaContainerLocalityListener() {
+        return containerModel -> samzaContainerLocality()
+            .recordAssignment(containerModel.getContainerId(), containerModel.getTasks().keySet());
+    }
+
+    //publishes how long this member took to claim its id, and how many ids it tried, with each container's metrics:
+    @Bean
+    @ConditionalOnMissingBean(name = "samzaContainerClaimMetricsListener")
+    public ContainerAssignmentListener samzaContainerClaimMetricsListener() {
+        SequentialGroupMember member = samzaContainerGroupMember();
+        return new ContainerAssignmentListener() {
+            @Override
+            public void containerAssigned(ContainerModel containerModel) {
+            }
+
+            @Override
+            public void containerCreated(ContainerModel containerModel, MetricsRegistry registry) {
+                registry.newGauge(CLAIM_METRICS_GROUP, "claim-ms", member.getClaimMillis());
+                registry.newGauge(CLAIM_METRICS_GROUP, "claim-attempts", member.getClaimAttempts());
+            }
+        };
+    }
+
+    //if a member joins or leaves, the JobModel is rebuilt for the live members and containers whose tasks changed are
+    //restarted.  Otherwise samza.container.count must match the number of members.  The JobModel coordinator implies
+    //this since it is computed for the live members:
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnExpression(
+        "${samza.zookeeper.containers.rebalance.enabled:false} or ${samza.zookeeper.coordinator.enabled:false}")
+    public ContainerMembership samzaContainerMembership() {
+        return new SequentialGroupMembership(samzaContainerGroupMember());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(name = "samzaJobCoordinatorPath")
+    @ConditionalOnProperty(name = "samza.zookeeper.coordinator.enabled")
+    public String samzaJobCoordinatorPath() {
+        if (samzaJobCoordinatorPath != null) {
+            return samzaJobCoordinatorPath;
+        }
+        return getJobPath() + "/coordinator";
+    }
+
+    //the elected leader computes the JobModel and the other containers use the one it publishes:
+    @Bean(initMethod = "start", destroyMethod = "close")
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(name = "samza.zookeeper.coordinator.enabled")
+    public ZookeeperJobModelCoordinator samzaJobModelCoordinator() {
+        ZookeeperJobModelCoordinator coordinator = new ZookeeperJobModelCoordinator(curator, samzaJobCoordinatorPath());
+        coordinator.setWaitMillis(coordinatorWaitMillis);
+        return coordinator;
     }
 
     @Bean
     @ConditionalOnMissingBean(name = "samzaContainerCount")
+    @ConditionalOnExpression(
+        "!${samza.zookeeper.containers.rebalance.enabled:false} and !${samza.zookeeper.coordinator.enabled:false}")
     public int samzaContainerId() {
+        //local containers would use ids this member hasn't claimed, which may be running in other processes:
+        Assert.isTrue(samzaContainerLocalIds == null && samzaContainerLocalCount <= 1,
+            "samza.container.local.ids and samza.container.local.count are not supported if the Samza container " +
+                "id is claimed from ZooKeeper.  Only one Samza container per JVM is supported in that case.");
         SequentialGroupMember member = samzaContainerGroupMember();
         return member.getId();
     }
@@ -0,0 +1,35 @@
+package com.stormpath.spring.boot.samza.curator;
+
+import com.stormpath.curator.framework.recipes.nodes.SequentialGroupMember;
+import com.stormpath.spring.boot.samza.ContainerMembership;
+import org.springframework.util.Assert;
+
+import java.util.List;
+
+/**
+ * A {@link ContainerMembership} backed by the members of a {@link SequentialGroupMember}'s group.
+ */
+public class SequentialGroupMembership implements ContainerMembership {
+
+    private final SequentialGroupMember member;
+
+    public SequentialGroupMembership(SequentialGroupMember member) {
+        Assert.notNull(member, "SequentialGroupMember cannot be null.");
+        this.member = member;
+    }
+
+    @Override
+    public int getMemberId() {
+        return member.getId();
+    }
+
+    @Override
+    public List<Integer> getMemberIds() {
+        return member.getCurrentMemberIds();
+    }
+
+    @Override
+    public void addListener(Listener listener) {
+        member.addListener(listener::membersChanged);
+    }
+}
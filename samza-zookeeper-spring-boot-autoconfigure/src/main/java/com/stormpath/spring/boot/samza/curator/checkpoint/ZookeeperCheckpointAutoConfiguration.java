@@ -1,6 +1,11 @@
 package com.stormpath.spring.boot.samza.curator.checkpoint;
 
+import com.stormpath.samza.curator.checkpoint.BinaryCheckpointCodec;
+import com.stormpath.samza.curator.checkpoint.CheckpointCodec;
+import com.stormpath.samza.curator.checkpoint.JsonCheckpointCodec;
 import com.stormpath.samza.curator.checkpoint.ZookeeperCheckpointManager;
+import com.stormpath.spring.boot.samza.JobModelCache;
+import com.stormpath.spring.boot.samza.curator.model.ZookeeperJobModelCache;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.samza.checkpoint.CheckpointManager;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -10,6 +15,7 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.util.Assert;
 
 @Configuration
 @ConditionalOnProperty(name = {"samza.enabled", "spring.cloud.zookeeper.enabled", "samza.zookeeper.enabled", "samza.zookeeper.checkpointManager.enabled"}, matchIfMissing = true)
@@ -25,17 +31,73 @@ public class ZookeeperCheckpointAutoConfiguration {
     @Value("#{ @environment['samza.job.name'] ?: (@environment['spring.application.name'] ?: null) }")
     private String samzaJobName;
 
+    //queue checkpoints and write them in a background transaction instead of on the container thread:
+    @Value("#{ @environment['samza.zookeeper.checkpointManager.writeBehind.enabled'] ?: false }")
+    private boolean writeBehind;
+
+    @Value("#{ @environment['samza.zookeeper.checkpointManager.flushTimeoutMillis'] ?: 30000 }")
+    private long flushTimeoutMillis;
+
+    //these two only apply with writeBehind.enabled - otherwise each checkpoint is written on its own when committed:
+    @Value("#{ @environment['samza.zookeeper.checkpointManager.writeBehind.lingerMillis'] ?: 10 }")
+    private long lingerMillis;
+
+    @Value("#{ @environment['samza.zookeeper.checkpointManager.maxTransactionBytes'] ?: 0 }")
+    private int maxTransactionBytes;
+
+    @Value("#{ @environment['samza.zookeeper.checkpointManager.cache.enabled'] ?: true }")
+    private boolean cacheEnabled;
+
+    @Value("#{ @environment['samza.zookeeper.checkpointManager.maxConcurrentReads'] ?: 100 }")
+    private int maxConcurrentReads;
+
+    //'json' (Samza's format) or 'binary' (which can still read json checkpoints):
+    @Value("#{ @environment['samza.zookeeper.checkpointManager.codec'] ?: 'json' }")
+    private String codec;
+
+    @Value("#{ @environment['samza.zookeeper.checkpointManager.codec.compress'] ?: false }")
+    private boolean compress;
+
     @Bean
     @ConditionalOnMissingBean(name = "samzaJobZookeeperPath")
     public String samzaJobZookeeperPath() {
         return jobsNamespace + "/" + samzaJobName;
     }
 
+    @Bean
+    @ConditionalOnMissingBean
+    public CheckpointCodec samzaCheckpointCodec() {
+        if ("binary".equalsIgnoreCase(codec)) {
+            return new BinaryCheckpointCodec(compress);
+        }
+        Assert.isTrue("json".equalsIgnoreCase(codec),
+            "samza.zookeeper.checkpointManager.codec must be either 'json' or 'binary'.");
+        return new JsonCheckpointCodec();
+    }
+
     @Bean
     //do not specify the init/destroy methods here - the SamzaContainer instance calls these methods when necessary
+    //(close() is inferred as the destroy method and writes any checkpoints still queued)
     @ConditionalOnMissingBean
-    public CheckpointManager samzaCheckpointManager() {
+    public CheckpointManager samzaCheckpointManager(CheckpointCodec samzaCheckpointCodec) {
         String jobPath = samzaJobZookeeperPath();
-        return new ZookeeperCheckpointManager(curator, jobPath);
+        ZookeeperCheckpointManager manager = new ZookeeperCheckpointManager(curator, jobPath);
+        manager.setCodec(samzaCheckpointCodec);
+        manager.setWriteBehind(writeBehind);
+        manager.setFlushTimeoutMillis(flushTimeoutMillis);
+        manager.setLingerMillis(lingerMillis);
+        manager.setCacheEnabled(cacheEnabled);
+        manager.setMaxConcurrentReads(maxConcurrentReads);
+        if (maxTransactionBytes > 0) {
+            manager.setMaxTransactionBytes(maxTransactionBytes);
+        }
+        return manager;
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(name = "samza.job.model.cache.zookeeper.enabled")
+    public JobModelCache samzaJobModelCache() {
+        return new ZookeeperJobModelCache(curator, samzaJobZookeeperPath() + "/jobModel");
     }
 }
@@ -0,0 +1,62 @@
+package com.stormpath.spring.boot.samza.curator.model;
+
+import com.stormpath.spring.boot.samza.AbstractJobModelCache;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.zookeeper.KeeperException;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+
+/**
+ * Stores the cached JobModel in a single ZooKeeper node, typically under the job's path so it is shared by all of
+ * the job's containers.
+ */
+public class ZookeeperJobModelCache extends AbstractJobModelCache {
+
+    private final CuratorFramework curator;
+    private final String path;
+
+    public ZookeeperJobModelCache(CuratorFramework curator, String path) {
+        Assert.notNull(curator, "CuratorFramework cannot be null.");
+        Assert.hasText(path, "path cannot be null or empty.");
+        this.curator = curator;
+        this.path = path;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    @Override
+    protected byte[] read() throws IOException {
+        try {
+            return curator.getData().forPath(path);
+        } catch (KeeperException.NoNodeException e) {
+            return null;
+        } catch (Exception e) {
+            throw new IOException("Unable to read JobModel node " + path, e);
+        }
+    }
+
+    @Override
+    protected void write(byte[] bytes) throws IOException {
+        try {
+            try {
+                curator.setData().forPath(path, bytes);
+            } catch (KeeperException.NoNodeException e) {
+                try {
+                    curator.create().creatingParentsIfNeeded().forPath(path, bytes);
+                } catch (KeeperException.NodeExistsException e2) { //created concurrently by another container
+                    curator.setData().forPath(path, bytes);
+                }
+            }
+        } catch (Exception e) {
+            throw new IOException("Unable to write JobModel node " + path, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + path + "]";
+    }
+}
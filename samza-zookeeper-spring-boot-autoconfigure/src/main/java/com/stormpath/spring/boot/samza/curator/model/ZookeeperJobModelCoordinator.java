@@ -0,0 +1,202 @@
+package com.stormpath.spring.boot.samza.curator.model;
+
+import com.stormpath.spring.boot.samza.JobModelBuilder;
+import com.stormpath.spring.boot.samza.JobModelCoordinator;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.CuratorWatcher;
+import org.apache.curator.framework.recipes.leader.LeaderLatch;
+import org.apache.curator.framework.recipes.leader.LeaderLatchListener;
+import org.apache.curator.framework.recipes.leader.Participant;
+import org.apache.curator.utils.CloseableUtils;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.samza.config.Config;
+import org.apache.samza.job.model.JobModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * A {@link JobModelCoordinator} that elects a leader among the job's containers with a {@link LeaderLatch}.  The
+ * leader computes the JobModel and publishes it (gzipped, see {@link ZookeeperJobModelCache}) under
+ * {@code <path>/models/<containerCount>}, and the other containers wait for it to be published instead of fetching
+ * stream metadata and computing it themselves.
+ * <p>
+ * A published JobModel is only used if it was computed for the same config by the current leader, so a JobModel
+ * published before input partitions were added is never used by the next deployment.  If none is published within
+ * {@link #setWaitMillis(long) waitMillis} (e.g. because the leader is still computing a JobModel for a different
+ * number of containers), the container computes it itself.
+ */
+public class ZookeeperJobModelCoordinator implements JobModelCoordinator, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(ZookeeperJobModelCoordinator.class);
+
+    private final CuratorFramework curator;
+    private final String path;
+    private final String participantId = UUID.randomUUID().toString();
+    private final LeaderLatch leaderLatch;
+    private final Object monitor = new Object();
+
+    //the model paths with a registered watch, so a path is only watched again after its watch fired:
+    private final Set<String> watchedPaths = ConcurrentHashMap.newKeySet();
+
+    //notifies waiting containers when a JobModel is published:
+    private final CuratorWatcher publishedWatcher = event -> {
+        if (event.getPath() != null) {
+            watchedPaths.remove(event.getPath());
+        } else { //e.g. the session expired, which removes all watches
+            watchedPaths.clear();
+        }
+        wakeUp();
+    };
+
+    private long waitMillis = 30000;
+
+    public ZookeeperJobModelCoordinator(CuratorFramework curator, String path) {
+        Assert.notNull(curator, "CuratorFramework cannot be null.");
+        Assert.hasText(path, "path cannot be null or empty.");
+        this.curator = curator;
+        this.path = path;
+        this.leaderLatch = new LeaderLatch(curator, ZKPaths.makePath(path, "leader"), participantId);
+        this.leaderLatch.addListener(new LeaderLatchListener() {
+            @Override
+            public void isLeader() {
+                log.info("This container is now the JobModel leader of {}", ZookeeperJobModelCoordinator.this.path);
+                wakeUp();
+            }
+
+            @Override
+            public void notLeader() {
+                log.info("This container is no longer the JobModel leader of {}",
+                    ZookeeperJobModelCoordinator.this.path);
+            }
+        });
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public long getWaitMillis() {
+        return waitMillis;
+    }
+
+    /**
+     * Sets how long a container that isn't the leader waits for the leader to publish the JobModel before it
+     * computes the JobModel itself.
+     *
+     * @param waitMillis the maximum time to wait for a published JobModel
+     */
+    public void setWaitMillis(long waitMillis) {
+        Assert.isTrue(waitMillis >= 0, "waitMillis cannot be negative.");
+        this.waitMillis = waitMillis;
+    }
+
+    public boolean hasLeadership() {
+        return leaderLatch.hasLeadership();
+    }
+
+    public void start() throws Exception {
+        leaderLatch.start();
+    }
+
+    @Override
+    public void close() {
+        CloseableUtils.closeQuietly(leaderLatch);
+    }
+
+    @Override
+    public JobModel getJobModel(Config config, int containerCount, Supplier<JobModel> builder) {
+
+        Assert.notNull(config, "Config argument cannot be null.");
+        Assert.isTrue(containerCount > 0, "containerCount must be a positive integer (greater than zero).");
+        Assert.notNull(builder, "builder cannot be null.");
+
+        long start = System.currentTimeMillis();
+        long deadline = start + waitMillis;
+
+        String modelPath = ZKPaths.makePath(path, "models/" + containerCount);
+        ZookeeperJobModelCache published = new ZookeeperJobModelCache(curator, modelPath);
+
+        while (true) {
+
+            if (leaderLatch.hasLeadership()) {
+                JobModel jobModel = builder.get();
+                try {
+                    published.put(getKey(config, containerCount, participantId), jobModel);
+                    log.info("Published JobModel with {} containers to {}", containerCount, modelPath);
+                } catch (RuntimeException e) { //the other containers compute it themselves
+                    log.warn("Unable to publish JobModel to " + modelPath + ": " + e.getMessage(), e);
+                }
+                return jobModel;
+            }
+
+            JobModel jobModel = readPublished(published, modelPath, config, containerCount);
+            if (jobModel != null) {
+                log.info("Using JobModel with {} containers published to {} ({} ms)", containerCount, modelPath,
+                    System.currentTimeMillis() - start);
+                return new JobModel(config, jobModel.getContainers()); //use the live config instance
+            }
+
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                log.warn("No JobModel with {} containers was published to {} within {} ms, computing it locally.",
+                    containerCount, modelPath, waitMillis);
+                return builder.get();
+            }
+
+            synchronized (monitor) {
+                try {
+                    monitor.wait(Math.min(remaining, 1000)); //re-checks periodically in case a wake up was missed
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for the JobModel leader.", e);
+                }
+            }
+        }
+    }
+
+    private JobModel readPublished(ZookeeperJobModelCache published, String modelPath, Config config,
+                                   int containerCount) {
+        try {
+            Participant leader = leaderLatch.getLeader();
+            if (!leader.isLeader()) { //not elected yet
+                return null;
+            }
+            //watch first, so a JobModel published right after reading isn't missed:
+            if (watchedPaths.add(modelPath)) {
+                try {
+                    curator.checkExists().usingWatcher(publishedWatcher).forPath(modelPath);
+                } catch (Exception e) {
+                    watchedPaths.remove(modelPath);
+                    throw e;
+                }
+            }
+            return published.get(getKey(config, containerCount, leader.getId()));
+        } catch (Exception e) {
+            log.warn("Unable to read published JobModel from " + modelPath + ": " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    private void wakeUp() {
+        synchronized (monitor) {
+            monitor.notifyAll();
+        }
+    }
+
+    protected String getKey(Config config, int containerCount, String leaderId) {
+        return JobModelBuilder.digest(config, Arrays.asList("containerCount=" + containerCount, "leader=" + leaderId));
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + path + "]";
+    }
+}
@@ -0,0 +1,137 @@
+package com.stormpath.spring.boot.samza.curator.model
+
+import org.apache.curator.framework.CuratorFramework
+import org.apache.curator.framework.CuratorFrameworkFactory
+import org.apache.curator.retry.RetryOneTime
+import org.apache.curator.test.TestingServer
+import org.apache.samza.Partition
+import org.apache.samza.config.MapConfig
+import org.apache.samza.container.TaskName
+import org.apache.samza.job.model.ContainerModel
+import org.apache.samza.job.model.JobModel
+import org.apache.samza.job.model.TaskModel
+import org.apache.samza.system.SystemStreamPartition
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+import static org.junit.Assert.*
+
+class ZookeeperJobModelCoordinatorTest {
+
+    static final String PATH = '/samza/jobs/test/coordinator'
+
+    TestingServer server
+    List<CuratorFramework> curators = []
+    List<ZookeeperJobModelCoordinator> coordinators = []
+    ExecutorService executor = Executors.newCachedThreadPool()
+
+    def config = new MapConfig(['job.name': 'test', 'task.inputs': 'kafka.foo'])
+    def builds = new AtomicInteger()
+
+    @Before
+    void setUp() {
+        server = new TestingServer()
+    }
+
+    @After
+    void tearDown() {
+        executor.shutdownNow()
+        coordinators.each { it.close() }
+        curators.each { it.close() }
+        server?.close()
+    }
+
+    ZookeeperJobModelCoordinator newCoordinator() {
+        def curator = CuratorFrameworkFactory.newClient(server.connectString, new RetryOneTime(100))
+        curator.start()
+        curators << curator
+        def coordinator = new ZookeeperJobModelCoordinator(curator, PATH)
+        coordinator.start()
+        coordinators << coordinator
+        return coordinator
+    }
+
+    JobModel build(int containerCount) {
+        builds.incrementAndGet()
+        return jobModel(containerCount)
+    }
+
+    JobModel jobModel(int containerCount) {
+        def containers = (0..<containerCount).collectEntries { int containerId ->
+            def name = new TaskName("Partition $containerId")
+            def ssp = new SystemStreamPartition('kafka', 'foo', new Partition(containerId))
+            def tasks = [(name): new TaskModel(name, [ssp] as Set, new Partition(containerId))]
+            [(containerId): new ContainerModel(containerId, tasks)]
+        }
+        return new JobModel(config, containers)
+    }
+
+    static ZookeeperJobModelCoordinator waitForLeader(List<ZookeeperJobModelCoordinator> candidates) {
+        long deadline = System.currentTimeMillis() + 10000
+        while (System.currentTimeMillis() < deadline) {
+            def leader = candidates.find { it.hasLeadership() }
+            if (leader) {
+                return leader
+            }
+            Thread.sleep(10)
+        }
+        fail 'No JobModel leader was elected.'
+    }
+
+    List<JobModel> getJobModels(List<ZookeeperJobModelCoordinator> members, int containerCount) {
+        def futures = members.collect { coordinator ->
+            executor.submit({
+                coordinator.getJobModel(config, containerCount, { build(containerCount) })
+            } as Callable<JobModel>)
+        }
+        return futures.collect { it.get(20, TimeUnit.SECONDS) }
+    }
+
+    @Test
+    void testOnlyTheLeaderBuildsTheJobModel() {
+
+        def members = (0..<3).collect { newCoordinator() }
+        def leader = waitForLeader(members)
+
+        def models = getJobModels(members, 3)
+        assertEquals 1, builds.get()
+        models.each {
+            assertEquals jobModel(3).containers, it.containers
+            assertSame config, it.config //followers use the live config instance
+        }
+        builds.set(0)
+
+        //a new leader doesn't trust the JobModel published by the previous one:
+        leader.close()
+        members.remove(leader)
+        coordinators.remove(leader)
+        waitForLeader(members)
+        models = getJobModels(members, 2)
+        assertEquals 1, builds.get()
+        models.each { assertEquals 2, it.containers.size() }
+    }
+
+    @Test
+    void testFollowerBuildsTheJobModelIfNoneIsPublishedInTime() {
+
+        def leader = newCoordinator()
+        waitForLeader([leader])
+        def follower = newCoordinator()
+        follower.waitMillis = 200
+
+        //the leader never publishes a JobModel for 2 containers:
+        long start = System.currentTimeMillis()
+        def model = follower.getJobModel(config, 2, { build(2) })
+        assertTrue System.currentTimeMillis() - start >= 200
+        assertEquals 1, builds.get()
+        assertEquals 2, model.containers.size()
+        assertFalse follower.hasLeadership()
+    }
+}
@@ -0,0 +1,234 @@
+package com.stormpath.samza.curator.checkpoint;
+
+import org.apache.samza.Partition;
+import org.apache.samza.SamzaException;
+import org.apache.samza.checkpoint.Checkpoint;
+import org.apache.samza.system.SystemStreamPartition;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A compact binary checkpoint format: system and stream names are written once per checkpoint and referenced by
+ * index, partitions are varints and numeric offsets are varlongs.  The body is optionally gzipped.
+ * <p>
+ * Encoded checkpoints start with a two byte header (a magic byte and the format version).  Anything else is decoded
+ * as Samza's JSON format, so checkpoints written by {@link JsonCheckpointCodec} can still be read after switching to
+ * this codec.
+ */
+public class BinaryCheckpointCodec implements CheckpointCodec {
+
+    private static final byte MAGIC = (byte) 0xCB; //never the first byte of a JSON document
+    private static final byte VERSION = 1;
+
+    private static final int FLAG_GZIP = 1;
+
+    private static final int OFFSET_NULL = 0;
+    private static final int OFFSET_NUMBER = 1;
+    private static final int OFFSET_STRING = 2;
+
+    private static final CheckpointCodec JSON = new JsonCheckpointCodec();
+
+    private final boolean compress;
+
+    public BinaryCheckpointCodec() {
+        this(false);
+    }
+
+    /**
+     * @param compress whether to gzip encoded checkpoints, which pays off for tasks with many partitions or long
+     *                 string offsets.
+     */
+    public BinaryCheckpointCodec(boolean compress) {
+        this.compress = compress;
+    }
+
+    public boolean isCompress() {
+        return compress;
+    }
+
+    /**
+     * Returns {@code true} if the specified bytes were encoded by this codec (as opposed to being JSON).
+     *
+     * @param bytes the bytes of a checkpoint node
+     * @return {@code true} if the specified bytes were encoded by this codec
+     */
+    public static boolean isBinary(byte[] bytes) {
+        return bytes != null && bytes.length >= 2 && bytes[0] == MAGIC;
+    }
+
+    @Override
+    public byte[] encode(Checkpoint checkpoint) {
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(256);
+            baos.write(MAGIC);
+            baos.write(VERSION);
+            baos.write(compress ? FLAG_GZIP : 0);
+            if (compress) {
+                try (GZIPOutputStream gzip = new GZIPOutputStream(baos)) {
+                    writeBody(checkpoint, new DataOutputStream(gzip));
+                }
+            } else {
+                writeBody(checkpoint, new DataOutputStream(baos));
+            }
+            return baos.toByteArray();
+        } catch (IOException e) {
+            throw new SamzaException("Unable to encode checkpoint " + checkpoint + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Checkpoint decode(byte[] bytes) {
+        if (!isBinary(bytes)) {
+            return JSON.decode(bytes);
+        }
+        if (bytes[1] != VERSION) {
+            throw new SamzaException("Unsupported binary checkpoint version " + bytes[1] + ".");
+        }
+        try {
+            InputStream in = new ByteArrayInputStream(bytes, 3, bytes.length - 3);
+            if ((bytes[2] & FLAG_GZIP) != 0) {
+                in = new GZIPInputStream(in);
+            }
+            return readBody(new DataInputStream(in));
+        } catch (IOException e) {
+            throw new SamzaException("Unable to decode binary checkpoint: " + e.getMessage(), e);
+        }
+    }
+
+    private static void writeBody(Checkpoint checkpoint, DataOutputStream out) throws IOException {
+
+        Map<SystemStreamPartition, String> offsets = checkpoint.getOffsets();
+
+        //string table: each system and stream name is only written once:
+        Map<String, Integer> indexes = new LinkedHashMap<>();
+        for (SystemStreamPartition ssp : offsets.keySet()) {
+            indexes.putIfAbsent(ssp.getSystem(), indexes.size());
+            indexes.putIfAbsent(ssp.getStream(), indexes.size());
+        }
+        writeVarLong(out, indexes.size());
+        for (String s : indexes.keySet()) {
+            writeString(out, s);
+        }
+
+        writeVarLong(out, offsets.size());
+        for (Map.Entry<SystemStreamPartition, String> entry : offsets.entrySet()) {
+            SystemStreamPartition ssp = entry.getKey();
+            writeVarLong(out, indexes.get(ssp.getSystem()));
+            writeVarLong(out, indexes.get(ssp.getStream()));
+            writeVarLong(out, ssp.getPartition().getPartitionId());
+            writeOffset(out, entry.getValue());
+        }
+        out.flush();
+    }
+
+    private static Checkpoint readBody(DataInput in) throws IOException {
+
+        int count = (int) readVarLong(in);
+        List<String> strings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            strings.add(readString(in));
+        }
+
+        count = (int) readVarLong(in);
+        Map<SystemStreamPartition, String> offsets = new HashMap<>(count * 4 / 3 + 1);
+        for (int i = 0; i < count; i++) {
+            String system = strings.get((int) readVarLong(in));
+            String stream = strings.get((int) readVarLong(in));
+            Partition partition = new Partition((int) readVarLong(in));
+            offsets.put(new SystemStreamPartition(system, stream, partition), readOffset(in));
+        }
+        return new Checkpoint(offsets);
+    }
+
+    private static void writeOffset(DataOutput out, String offset) throws IOException {
+        if (offset == null) {
+            out.writeByte(OFFSET_NULL);
+        } else if (isCanonicalLong(offset)) { //e.g. Kafka offsets
+            out.writeByte(OFFSET_NUMBER);
+            writeVarLong(out, Long.parseLong(offset));
+        } else {
+            out.writeByte(OFFSET_STRING);
+            writeString(out, offset);
+        }
+    }
+
+    private static String readOffset(DataInput in) throws IOException {
+        int type = in.readUnsignedByte();
+        switch (type) {
+            case OFFSET_NULL:
+                return null;
+            case OFFSET_NUMBER:
+                return Long.toString(readVarLong(in));
+            case OFFSET_STRING:
+                return readString(in);
+            default:
+                throw new IOException("Unknown offset type " + type);
+        }
+    }
+
+    /**
+     * Returns {@code true} if the offset is a non-negative long that {@link Long#toString(long)} returns unchanged,
+     * so that it can be written as a number without altering it (e.g. {@code "007"} can't).
+     */
+    private static boolean isCanonicalLong(String s) {
+        int len = s.length();
+        if (len == 0 || len > 18 || (len > 1 && s.charAt(0) == '0')) { //18 digits always fit in a long
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writeString(DataOutput out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[(int) readVarLong(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    //unsigned LEB128, only used for non-negative values:
+    private static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint.");
+    }
+}
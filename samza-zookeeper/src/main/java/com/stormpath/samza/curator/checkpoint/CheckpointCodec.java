@@ -0,0 +1,16 @@
+package com.stormpath.samza.curator.checkpoint;
+
+import org.apache.samza.checkpoint.Checkpoint;
+
+/**
+ * Converts {@link Checkpoint}s to and from the bytes stored in a task's ZooKeeper checkpoint node.
+ *
+ * @see JsonCheckpointCodec
+ * @see BinaryCheckpointCodec
+ */
+public interface CheckpointCodec {
+
+    byte[] encode(Checkpoint checkpoint);
+
+    Checkpoint decode(byte[] bytes);
+}
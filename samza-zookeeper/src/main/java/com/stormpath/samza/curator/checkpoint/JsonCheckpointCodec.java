@@ -0,0 +1,23 @@
+package com.stormpath.samza.curator.checkpoint;
+
+import org.apache.samza.checkpoint.Checkpoint;
+import org.apache.samza.serializers.CheckpointSerde;
+
+/**
+ * Samza's JSON checkpoint format ({@link CheckpointSerde}), which repeats the system, stream and partition of every
+ * {@code SystemStreamPartition}.
+ */
+public class JsonCheckpointCodec implements CheckpointCodec {
+
+    private static final CheckpointSerde CHECKPOINT_SERDE = new CheckpointSerde();
+
+    @Override
+    public byte[] encode(Checkpoint checkpoint) {
+        return CHECKPOINT_SERDE.toBytes(checkpoint);
+    }
+
+    @Override
+    public Checkpoint decode(byte[] bytes) {
+        return CHECKPOINT_SERDE.fromBytes(bytes);
+    }
+}
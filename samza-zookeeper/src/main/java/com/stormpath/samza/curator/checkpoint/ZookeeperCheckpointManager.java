@@ -4,33 +4,245 @@ import com.stormpath.samza.lang.Assert;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.api.transaction.CuratorTransaction;
 import org.apache.curator.framework.api.transaction.CuratorTransactionFinal;
+import org.apache.curator.framework.api.transaction.CuratorTransactionResult;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.NodeCache;
+import org.apache.curator.utils.CloseableUtils;
 import org.apache.samza.SamzaException;
 import org.apache.samza.checkpoint.Checkpoint;
 import org.apache.samza.checkpoint.CheckpointManager;
 import org.apache.samza.container.TaskName;
-import org.apache.samza.serializers.CheckpointSerde;
+import org.apache.samza.metrics.Counter;
+import org.apache.samza.metrics.Gauge;
+import org.apache.samza.metrics.MetricsRegistry;
+import org.apache.samza.metrics.MetricsRegistryMap;
 import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
 import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
-public class ZookeeperCheckpointManager implements CheckpointManager {
+public class ZookeeperCheckpointManager implements CheckpointManager, Closeable {
 
     private static final Logger log = LoggerFactory.getLogger(ZookeeperCheckpointManager.class);
 
+    public static final String METRICS_GROUP = ZookeeperCheckpointManager.class.getName();
+
     private static final byte[] EMPTY_BYTES = new byte[0];
-    private static final CheckpointSerde CHECKPOINT_SERDE = new CheckpointSerde();
+
+    //ZooKeeper rejects requests larger than this, so bigger checkpoints can never be written:
+    private static final int MAX_REQUEST_BYTES = Integer.getInteger("jute.maxbuffer", 0xfffff);
 
     private final String tasksPath;
-    private final Set<TaskName> registeredTaskNames = new HashSet<>();
+    //concurrent: a single instance may be shared by multiple containers running in the same JVM:
+    private final Set<TaskName> registeredTaskNames = Collections.newSetFromMap(new ConcurrentHashMap<>());
     private final CuratorFramework curator;
+    private CheckpointCodec codec = new JsonCheckpointCodec();
+    //the last checkpoint written (or read) per task, so unchanged checkpoints of idle tasks aren't written again:
+    private final Map<TaskName, Checkpoint> lastCheckpoints = new ConcurrentHashMap<>();
+
+    //write-behind: checkpoints are queued (the last one per task wins) and written by a background thread:
+    private boolean writeBehind = false;
+    private long flushTimeoutMillis = 30000;
+    private long retryMillis = 1000;
+    private long lingerMillis = 10;
+    //stay well below ZooKeeper's request size limit, since each operation adds some overhead to its data:
+    private int maxTransactionBytes = MAX_REQUEST_BYTES / 2;
+    private final Object writeLock = new Object();
+    private final Map<TaskName, Checkpoint> pendingCheckpoints = new LinkedHashMap<>(); //guarded by writeLock
+    private Map<TaskName, Checkpoint> writingCheckpoints = Collections.emptyMap(); //guarded by writeLock
+    private long queuedCount = 0; //guarded by writeLock
+    private long writtenCount = 0; //guarded by writeLock - all checkpoints queued up to this count are written
+    private Exception writeFailure; //guarded by writeLock
+    private Exception discardFailure; //guarded by writeLock - why a checkpoint was discarded since the last flush
+    private Thread writer; //guarded by writeLock
+    private boolean closed = false; //guarded by writeLock
+    private long firstPendingMillis; //guarded by writeLock
+    private int flushWaiters = 0; //guarded by writeLock
+
+    //read-through cache: the registered tasks' checkpoints are loaded in one pass at start and then kept fresh by
+    //watches on their checkpoint nodes:
+    private boolean cacheEnabled = true;
+    private long cacheTimeoutMillis = 30000;
+    private volatile Map<TaskName, NodeCache> checkpointCaches = Collections.emptyMap(); //empty if disabled/stopped
+    //node versions of our own writes, so a cache that hasn't seen them yet isn't used:
+    private final Map<String, Integer> writtenVersions = new ConcurrentHashMap<>();
+
+    private int maxConcurrentReads = 100;
+
+    private MetricsRegistry metricsRegistry;
+    private Gauge<Integer> queueDepthGauge;
+    private Gauge<Long> writeLatencyGauge;
+    private Counter writtenCounter;
+    private Counter coalescedCounter;
+    private Counter skippedCounter;
+    private Counter writeFailureCounter;
+    private Counter discardedCounter;
+    private Counter transactionCounter;
 
     public ZookeeperCheckpointManager(CuratorFramework curator, String jobPath) {
         Assert.hasText(jobPath, "jobPath cannot be null or empty.");
         this.tasksPath = jobPath + "/tasks";
         this.curator = Assert.notNull(curator, "Curator cannot be null.");
+        setMetricsRegistry(new MetricsRegistryMap());
+    }
+
+    public CheckpointCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Sets the codec used to write checkpoint nodes and to read them back.  Defaults to Samza's JSON format; switch to
+     * a {@link BinaryCheckpointCodec} (which can still read JSON nodes) for smaller nodes and faster decoding.
+     *
+     * @param codec the codec used to encode and decode checkpoints
+     */
+    public void setCodec(CheckpointCodec codec) {
+        this.codec = Assert.notNull(codec, "CheckpointCodec cannot be null.");
+    }
+
+    public boolean isWriteBehind() {
+        return writeBehind;
+    }
+
+    /**
+     * Sets whether checkpoints are written by a background thread instead of the calling (container) thread.  If
+     * enabled, repeated checkpoints of the same task are coalesced (the last one wins) and the checkpoints of a commit
+     * round are grouped (see {@link #setLingerMillis(long)}) and written in as few ZooKeeper transactions as
+     * {@link #setMaxTransactionBytes(int)} allows.  {@link #flush()} (called by {@link #stop()}) waits until every
+     * checkpoint queued before the call is written.
+     * <p>
+     * Checkpoints that fail to be written because ZooKeeper can't be reached are retried after
+     * {@link #setRetryMillis(long) retryMillis}.  If a transaction fails for any other reason (e.g. a checkpoint node
+     * has been deleted), its checkpoints are written one at a time and those that still fail are discarded, so they
+     * don't hold up the others; the next {@link #flush()} then fails.
+     *
+     * @param writeBehind whether checkpoints are written by a background thread
+     */
+    public void setWriteBehind(boolean writeBehind) {
+        this.writeBehind = writeBehind;
+    }
+
+    public long getFlushTimeoutMillis() {
+        return flushTimeoutMillis;
+    }
+
+    public void setFlushTimeoutMillis(long flushTimeoutMillis) {
+        Assert.isTrue(flushTimeoutMillis > 0, "flushTimeoutMillis must be greater than zero.");
+        this.flushTimeoutMillis = flushTimeoutMillis;
+    }
+
+    public long getRetryMillis() {
+        return retryMillis;
+    }
+
+    public void setRetryMillis(long retryMillis) {
+        Assert.isTrue(retryMillis >= 0, "retryMillis must be greater than or equal to zero.");
+        this.retryMillis = retryMillis;
+    }
+
+    public long getLingerMillis() {
+        return lingerMillis;
+    }
+
+    /**
+     * Sets how long the background writer waits after a checkpoint is queued before writing, so the checkpoints of
+     * all tasks committed in the same round are written in a single transaction.  Only applies to write-behind.
+     *
+     * @param lingerMillis the time to wait for more checkpoints, 0 to write immediately.
+     */
+    public void setLingerMillis(long lingerMillis) {
+        Assert.isTrue(lingerMillis >= 0, "lingerMillis must be greater than or equal to zero.");
+        this.lingerMillis = lingerMillis;
+    }
+
+    public int getMaxTransactionBytes() {
+        return maxTransactionBytes;
+    }
+
+    /**
+     * Sets the approximate maximum size of a single checkpoint transaction; larger sets of checkpoints are split into
+     * multiple transactions.  Defaults to half of ZooKeeper's {@code jute.maxbuffer} system property (1 MB by default).
+     * Only applies to write-behind: Samza commits one task at a time, so without it each checkpoint is written by its
+     * own request as soon as it is committed.
+     *
+     * @param maxTransactionBytes the maximum size of a single transaction
+     */
+    public void setMaxTransactionBytes(int maxTransactionBytes) {
+        Assert.isTrue(maxTransactionBytes > 0, "maxTransactionBytes must be greater than zero.");
+        this.maxTransactionBytes = maxTransactionBytes;
+    }
+
+    public boolean isCacheEnabled() {
+        return cacheEnabled;
+    }
+
+    /**
+     * Sets whether {@link #start()} loads the checkpoints of the registered tasks with a {@link NodeCache} per task
+     * (pipelined reads instead of one round trip per task) so that {@link #readLastCheckpoint(TaskName)} is served
+     * from memory.  Each cache is kept up to date with a watch on its task's checkpoint node until {@link #stop()} is
+     * called; the checkpoints of the job's other tasks are not watched.
+     *
+     * @param cacheEnabled whether checkpoints are read through a cache
+     */
+    public void setCacheEnabled(boolean cacheEnabled) {
+        this.cacheEnabled = cacheEnabled;
+    }
+
+    public long getCacheTimeoutMillis() {
+        return cacheTimeoutMillis;
+    }
+
+    /**
+     * Sets how long {@link #start()} waits for the checkpoint cache to load.  Checkpoints that haven't been loaded by
+     * then are read directly from ZooKeeper until they are.
+     *
+     * @param cacheTimeoutMillis the time to wait for the cache to load
+     */
+    public void setCacheTimeoutMillis(long cacheTimeoutMillis) {
+        Assert.isTrue(cacheTimeoutMillis > 0, "cacheTimeoutMillis must be greater than zero.");
+        this.cacheTimeoutMillis = cacheTimeoutMillis;
+    }
+
+    public int getMaxConcurrentReads() {
+        return maxConcurrentReads;
+    }
+
+    /**
+     * Sets the maximum number of ZooKeeper reads that may be in flight at once when reading the data of every task,
+     * e.g. the changelog partition mapping.
+     *
+     * @param maxConcurrentReads the maximum number of concurrent reads
+     */
+    public void setMaxConcurrentReads(int maxConcurrentReads) {
+        Assert.isTrue(maxConcurrentReads > 0, "maxConcurrentReads must be greater than zero.");
+        this.maxConcurrentReads = maxConcurrentReads;
+    }
+
+    public MetricsRegistry getMetricsRegistry() {
+        return metricsRegistry;
+    }
+
+    public void setMetricsRegistry(MetricsRegistry registry) {
+        Assert.notNull(registry, "MetricsRegistry cannot be null.");
+        this.metricsRegistry = registry;
+        this.queueDepthGauge = registry.newGauge(METRICS_GROUP, "checkpoint-queue-depth", 0);
+        this.writeLatencyGauge = registry.newGauge(METRICS_GROUP, "checkpoint-write-ms", 0L);
+        this.writtenCounter = registry.newCounter(METRICS_GROUP, "checkpoints-written");
+        this.coalescedCounter = registry.newCounter(METRICS_GROUP, "checkpoints-coalesced");
+        this.skippedCounter = registry.newCounter(METRICS_GROUP, "checkpoints-skipped");
+        this.writeFailureCounter = registry.newCounter(METRICS_GROUP, "checkpoint-write-failures");
+        this.discardedCounter = registry.newCounter(METRICS_GROUP, "checkpoints-discarded");
+        this.transactionCounter = registry.newCounter(METRICS_GROUP, "checkpoint-transactions");
     }
 
     @Override
@@ -47,6 +259,9 @@ public class ZookeeperCheckpointManager implements CheckpointManager {
 
     private void doStart() throws Exception {
 
+        //tasks may have been checkpointed by another container since we last started:
+        lastCheckpoints.clear();
+
         //ensure base path node exists:
         try {
             String result = curator.create().creatingParentsIfNeeded().forPath(tasksPath, EMPTY_BYTES);
@@ -76,6 +291,66 @@ public class ZookeeperCheckpointManager implements CheckpointManager {
                 log.trace("Exception details: ", e);
             }
         }
+
+        if (cacheEnabled) {
+            startCheckpointCache();
+        }
+    }
+
+    protected void startCheckpointCache() throws Exception {
+
+        closeCheckpointCache();
+
+        List<TaskName> taskNames = new ArrayList<>(registeredTaskNames);
+        Map<TaskName, NodeCache> caches = new LinkedHashMap<>();
+        CountDownLatch loaded = new CountDownLatch(taskNames.size());
+
+        long start = System.currentTimeMillis();
+        for (TaskName tn : taskNames) {
+            NodeCache cache = new NodeCache(curator, getCheckpointPath(tn));
+            AtomicBoolean first = new AtomicBoolean(true);
+            cache.getListenable().addListener(() -> {
+                if (first.compareAndSet(true, false)) {
+                    loaded.countDown();
+                }
+            });
+            cache.start(); //reads in the background, so the caches of all tasks load concurrently
+            caches.put(tn, cache);
+        }
+        this.checkpointCaches = caches;
+
+        if (loaded.await(cacheTimeoutMillis, TimeUnit.MILLISECONDS)) {
+            log.info("Loaded checkpoint cache for {} tasks in {} ms", caches.size(),
+                System.currentTimeMillis() - start);
+        } else {
+            log.warn("Checkpoint cache did not load within {} ms; checkpoints that haven't been loaded yet will be " +
+                "read directly from ZooKeeper.", cacheTimeoutMillis);
+        }
+    }
+
+    protected void closeCheckpointCache() {
+        Map<TaskName, NodeCache> caches = this.checkpointCaches;
+        this.checkpointCaches = Collections.emptyMap();
+        for (NodeCache cache : caches.values()) {
+            CloseableUtils.closeQuietly(cache);
+        }
+    }
+
+    /**
+     * Returns the checkpoints of the registered tasks as last seen in ZooKeeper, without reading from ZooKeeper.
+     * Empty if the cache is disabled or the manager isn't started.
+     *
+     * @return the cached checkpoints of the registered tasks
+     */
+    public Map<TaskName, Checkpoint> getCachedCheckpoints() {
+        Map<TaskName, Checkpoint> checkpoints = new LinkedHashMap<>();
+        for (Map.Entry<TaskName, NodeCache> entry : checkpointCaches.entrySet()) {
+            ChildData data = entry.getValue().getCurrentData();
+            if (data != null && data.getData() != null && data.getData().length > 0) {
+                checkpoints.put(entry.getKey(), codec.decode(data.getData()));
+            }
+        }
+        return checkpoints;
     }
 
     @Override
@@ -94,9 +369,20 @@ public class ZookeeperCheckpointManager implements CheckpointManager {
 
     @Override
     public void writeCheckpoint(TaskName taskName, Checkpoint checkpoint) {
+        if (writeBehind) {
+            enqueueCheckpoint(taskName, checkpoint);
+            return;
+        }
+        if (checkpoint.equals(lastCheckpoints.get(taskName))) {
+            skippedCounter.inc();
+            log.trace("Skipping unchanged checkpoint of Task {}", taskName);
+            return;
+        }
         try {
-            log.info("Writing Task {} {}", taskName, checkpoint);
+            log.debug("Writing Task {} {}", taskName, checkpoint);
             doWriteCheckpoint(taskName, checkpoint);
+            lastCheckpoints.put(taskName, checkpoint);
+            writtenCounter.inc();
         } catch (Exception e) {
             String msg = "Unable to write checkpoint " + checkpoint + " for taskName " + taskName + ": " + e.getMessage();
             throw new SamzaException(msg, e);
@@ -105,8 +391,293 @@ public class ZookeeperCheckpointManager implements CheckpointManager {
 
     protected void doWriteCheckpoint(TaskName tn, Checkpoint checkpoint) throws Exception {
         String checkpointPath = getCheckpointPath(tn);
-        byte[] serialized = CHECKPOINT_SERDE.toBytes(checkpoint);
-        curator.setData().forPath(checkpointPath, serialized);
+        byte[] serialized = encode(tn, checkpoint);
+        Stat stat = curator.setData().forPath(checkpointPath, serialized);
+        writtenVersions.merge(checkpointPath, stat.getVersion(), Math::max);
+    }
+
+    private byte[] encode(TaskName tn, Checkpoint checkpoint) {
+        byte[] serialized = codec.encode(checkpoint);
+        if (serialized.length > MAX_REQUEST_BYTES) {
+            throw new IllegalArgumentException("Checkpoint of Task " + tn + " is " + serialized.length +
+                " bytes, more than ZooKeeper accepts (jute.maxbuffer = " + MAX_REQUEST_BYTES + " bytes).");
+        }
+        return serialized;
+    }
+
+    protected void enqueueCheckpoint(TaskName tn, Checkpoint checkpoint) {
+        synchronized (writeLock) {
+            if (closed) {
+                throw new SamzaException("Unable to write checkpoint " + checkpoint + " for taskName " + tn +
+                    ": " + getClass().getSimpleName() + " has been closed.");
+            }
+            Checkpoint newest = pendingCheckpoints.get(tn);
+            if (newest == null) {
+                newest = writingCheckpoints.get(tn);
+            }
+            if (newest == null) {
+                newest = lastCheckpoints.get(tn);
+            }
+            if (checkpoint.equals(newest)) {
+                skippedCounter.inc();
+                log.trace("Skipping unchanged checkpoint of Task {}", tn);
+                return;
+            }
+            if (pendingCheckpoints.isEmpty()) {
+                firstPendingMillis = System.currentTimeMillis();
+            }
+            if (pendingCheckpoints.put(tn, checkpoint) != null) {
+                coalescedCounter.inc();
+            }
+            queuedCount++;
+            queueDepthGauge.set(pendingCheckpoints.size());
+            if (writer == null) {
+                writer = new Thread(this::runWriter, getClass().getSimpleName() + "-writer");
+                writer.setDaemon(true);
+                writer.start();
+            }
+            writeLock.notifyAll();
+        }
+        log.debug("Queued Task {} {}", tn, checkpoint);
+    }
+
+    private void runWriter() {
+        while (true) {
+
+            Map<TaskName, Checkpoint> checkpoints;
+            long count;
+            synchronized (writeLock) {
+                while (pendingCheckpoints.isEmpty() && !closed) {
+                    try {
+                        writeLock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                if (pendingCheckpoints.isEmpty()) { //closed
+                    return;
+                }
+                //give the other tasks committing in this round a chance to queue theirs:
+                long remaining;
+                while (!closed && flushWaiters == 0 &&
+                    (remaining = firstPendingMillis + lingerMillis - System.currentTimeMillis()) > 0) {
+                    try {
+                        writeLock.wait(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                checkpoints = new LinkedHashMap<>(pendingCheckpoints);
+                pendingCheckpoints.clear();
+                writingCheckpoints = checkpoints;
+                count = queuedCount;
+            }
+
+            long start = System.currentTimeMillis();
+            Map<TaskName, Checkpoint> failed = new LinkedHashMap<>(); //to be retried
+            Map<TaskName, Exception> discarded = new LinkedHashMap<>(); //can never be written
+            Exception failure = null;
+            try {
+                doWriteCheckpoints(checkpoints);
+                writeLatencyGauge.set(System.currentTimeMillis() - start);
+            } catch (Exception e) {
+                writeFailureCounter.inc();
+                if (isRetryable(e)) {
+                    failed.putAll(checkpoints);
+                    failure = e;
+                } else {
+                    //e.g. a deleted node: write the others without the checkpoints that can't be written
+                    log.warn("Unable to write {} checkpoints in a transaction, writing them one at a time: {}",
+                        checkpoints.size(), e.getMessage(), e);
+                    failure = writeOneAtATime(checkpoints, failed, discarded);
+                }
+            }
+            writtenCounter.inc(checkpoints.size() - failed.size() - discarded.size());
+
+            if (failure != null) {
+                log.warn("Unable to write {} checkpoints, retrying in {} ms: {}", failed.size(), retryMillis,
+                    failure.getMessage(), failure);
+            }
+
+            synchronized (writeLock) {
+                for (Map.Entry<TaskName, Checkpoint> entry : checkpoints.entrySet()) {
+                    if (!failed.containsKey(entry.getKey()) && !discarded.containsKey(entry.getKey())) {
+                        lastCheckpoints.put(entry.getKey(), entry.getValue());
+                    }
+                }
+                if (!discarded.isEmpty()) {
+                    discardFailure = discarded.values().iterator().next();
+                }
+                writingCheckpoints = Collections.emptyMap();
+                //re-queue, unless a newer checkpoint has been queued in the meantime:
+                for (Map.Entry<TaskName, Checkpoint> entry : failed.entrySet()) {
+                    pendingCheckpoints.putIfAbsent(entry.getKey(), entry.getValue());
+                }
+                if (failed.isEmpty()) {
+                    writtenCount = count;
+                }
+                writeFailure = failure;
+                queueDepthGauge.set(pendingCheckpoints.size());
+                writeLock.notifyAll();
+                if (failure == null) {
+                    continue;
+                }
+                if (closed) { //close() already gave up waiting
+                    log.error("Discarding {} checkpoints that could not be written before close.",
+                        pendingCheckpoints.size());
+                    return;
+                }
+                if (retryMillis > 0) {
+                    try {
+                        writeLock.wait(retryMillis); //releases the lock so checkpoints can still be queued
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes each of the specified checkpoints on its own, after a transaction writing them failed.
+     *
+     * @param checkpoints the checkpoints to write
+     * @param failed      receives the checkpoints that failed to be written and should be retried
+     * @param discarded   receives the tasks whose checkpoint can never be written, e.g. because its node has been
+     *                    deleted, with the reason
+     * @return the last failure of a checkpoint to be retried, or {@code null} if there is none
+     */
+    private Exception writeOneAtATime(Map<TaskName, Checkpoint> checkpoints, Map<TaskName, Checkpoint> failed,
+                                      Map<TaskName, Exception> discarded) {
+        Exception failure = null;
+        for (Map.Entry<TaskName, Checkpoint> entry : checkpoints.entrySet()) {
+            try {
+                doWriteCheckpoint(entry.getKey(), entry.getValue());
+            } catch (Exception e) {
+                if (isRetryable(e)) {
+                    failed.put(entry.getKey(), entry.getValue());
+                    failure = e;
+                } else {
+                    log.error("Discarding checkpoint {} of Task {}, it cannot be written: {}", entry.getValue(),
+                        entry.getKey(), e.getMessage(), e);
+                    discarded.put(entry.getKey(), e);
+                    discardedCounter.inc();
+                }
+            }
+        }
+        return failure;
+    }
+
+    /**
+     * Returns whether a failed write may succeed if it is retried: only if ZooKeeper couldn't be reached (or didn't
+     * respond in time), not if it rejected the write.
+     */
+    private static boolean isRetryable(Exception e) {
+        if (!(e instanceof KeeperException)) {
+            return false;
+        }
+        switch (((KeeperException) e).code()) {
+            case CONNECTIONLOSS:
+            case OPERATIONTIMEOUT:
+            case SESSIONEXPIRED:
+            case SESSIONMOVED:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Writes all of the specified checkpoints in as few ZooKeeper transactions as {@code maxTransactionBytes} allows
+     * (usually one).
+     *
+     * @param checkpoints the checkpoints to write
+     * @throws Exception if a checkpoint is larger than ZooKeeper accepts, or if a transaction fails, in which case its
+     *                   checkpoints (and those of later transactions) are not written
+     */
+    protected void doWriteCheckpoints(Map<TaskName, Checkpoint> checkpoints) throws Exception {
+
+        CuratorTransaction transaction = curator.inTransaction();
+        CuratorTransactionFinal last = null;
+        int bytes = 0;
+        int transactions = 0;
+
+        for (Map.Entry<TaskName, Checkpoint> entry : checkpoints.entrySet()) {
+            String path = getCheckpointPath(entry.getKey());
+            byte[] serialized = encode(entry.getKey(), entry.getValue());
+            int size = path.length() + serialized.length + 16; //16: approximate per-operation overhead
+
+            if (last != null && bytes + size > maxTransactionBytes) {
+                recordWrittenVersions(last.commit());
+                transactions++;
+                transaction = curator.inTransaction();
+                last = null;
+                bytes = 0;
+            }
+
+            last = transaction.setData().forPath(path, serialized).and();
+            transaction = last;
+            bytes += size;
+        }
+
+        if (last != null) {
+            recordWrittenVersions(last.commit());
+            transactions++;
+        }
+
+        transactionCounter.inc(transactions);
+        log.debug("Wrote {} checkpoints in {} transaction(s): {}", checkpoints.size(), transactions, checkpoints);
+    }
+
+    private void recordWrittenVersions(Collection<CuratorTransactionResult> results) {
+        for (CuratorTransactionResult result : results) {
+            if (result.getResultStat() != null) {
+                writtenVersions.merge(result.getForPath(), result.getResultStat().getVersion(), Math::max);
+            }
+        }
+    }
+
+    /**
+     * Blocks until every checkpoint queued before this call has been written to ZooKeeper.  Returns immediately if
+     * write-behind is disabled.
+     *
+     * @throws SamzaException if the checkpoints could not be written within {@code flushTimeoutMillis}, or if a
+     *                        checkpoint has been discarded since the last flush because it can never be written
+     */
+    public void flush() {
+        synchronized (writeLock) {
+            long target = queuedCount;
+            long deadline = System.currentTimeMillis() + flushTimeoutMillis;
+            flushWaiters++;
+            writeLock.notifyAll(); //no need to linger
+            try {
+                while (writtenCount < target) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        String msg = "Unable to write " + pendingCheckpoints.size() + " pending checkpoints within " +
+                            flushTimeoutMillis + " ms" +
+                            (writeFailure != null ? ": " + writeFailure.getMessage() : ".");
+                        throw new SamzaException(msg, writeFailure);
+                    }
+                    try {
+                        writeLock.wait(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new SamzaException("Interrupted while flushing checkpoints.", e);
+                    }
+                }
+            } finally {
+                flushWaiters--;
+            }
+            if (discardFailure != null) {
+                Exception e = discardFailure;
+                discardFailure = null;
+                throw new SamzaException("Discarded checkpoints that cannot be written: " + e.getMessage(), e);
+            }
+        }
     }
 
     @Override
@@ -125,10 +696,29 @@ public class ZookeeperCheckpointManager implements CheckpointManager {
 
         assertRegistered(tn);
 
+        synchronized (writeLock) {
+            Checkpoint pending = pendingCheckpoints.get(tn);
+            if (pending == null) {
+                pending = writingCheckpoints.get(tn);
+            }
+            if (pending != null) { //not written yet
+                return pending;
+            }
+        }
+
         String checkpointPath = getCheckpointPath(tn);
-        byte[] data = curator.getData().forPath(checkpointPath);
+        byte[] data;
+        NodeCache cache = checkpointCaches.get(tn);
+        ChildData cached = cache != null ? cache.getCurrentData() : null;
+        if (cached != null && cached.getStat().getVersion() >= writtenVersions.getOrDefault(checkpointPath, -1)) {
+            data = cached.getData();
+        } else {
+            data = curator.getData().forPath(checkpointPath);
+        }
         if (data != null && data.length > 0) {
-            return CHECKPOINT_SERDE.fromBytes(data);
+            Checkpoint checkpoint = codec.decode(data);
+            lastCheckpoints.putIfAbsent(tn, checkpoint);
+            return checkpoint;
         }
         return null;
     }
@@ -166,8 +756,6 @@ public class ZookeeperCheckpointManager implements CheckpointManager {
 
     protected Map<TaskName, Integer> doReadChangeLogPartitionMapping() throws Exception {
 
-        Map<TaskName, Integer> m = new HashMap<>();
-
         List<String> children;
         try {
             children = curator.getChildren().forPath(tasksPath);
@@ -177,17 +765,53 @@ public class ZookeeperCheckpointManager implements CheckpointManager {
         }
 
         log.debug("Getting changelog partition mappings for tasks {}", children);
+
+        //pipeline the reads instead of waiting for one round trip per task:
+        Map<TaskName, Integer> m = new ConcurrentHashMap<>();
+        Semaphore permits = new Semaphore(maxConcurrentReads);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+
         for (String taskName : children) {
-            String path = tasksPath + "/" + taskName;
-            byte[] data = curator.getData().forPath(path);
-            if (data != null && data.length > 0) {
-                int val = bytesToInt(data);
-                TaskName tn = new TaskName(taskName);
-                m.put(tn, val);
+
+            permits.acquire();
+            if (failure.get() != null) {
+                permits.release();
+                break;
+            }
+
+            TaskName tn = new TaskName(taskName);
+            try {
+                curator.getData().inBackground((client, event) -> {
+                    try {
+                        KeeperException.Code code = KeeperException.Code.get(event.getResultCode());
+                        byte[] data = event.getData();
+                        if (code == KeeperException.Code.OK) {
+                            if (data != null && data.length > 0) {
+                                m.put(tn, bytesToInt(data));
+                            }
+                        } else if (code != KeeperException.Code.NONODE) { //NONODE: no mapping for this task yet
+                            failure.compareAndSet(null, KeeperException.create(code, event.getPath()));
+                        }
+                    } catch (Exception e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        permits.release();
+                    }
+                }).forPath(getChangelogPartitionNumberPath(tn));
+            } catch (Exception e) {
+                permits.release();
+                throw e;
             }
         }
 
-        return m;
+        permits.acquire(maxConcurrentReads); //wait for all outstanding reads
+
+        Exception e = failure.get();
+        if (e != null) {
+            throw e;
+        }
+
+        return new HashMap<>(m);
     }
 
     @Override
@@ -244,6 +868,37 @@ public class ZookeeperCheckpointManager implements CheckpointManager {
 
     @Override
     public void stop() {
+        try {
+            flush();
+        } finally {
+            closeCheckpointCache();
+        }
         log.debug("Stopped {}", getClass().getSimpleName());
     }
+
+    /**
+     * Writes any pending checkpoints and stops the background writer thread, if any.  Checkpoints can't be written
+     * afterwards.
+     */
+    @Override
+    public void close() {
+        try {
+            flush();
+        } finally {
+            closeCheckpointCache();
+            Thread thread;
+            synchronized (writeLock) {
+                closed = true;
+                thread = writer;
+                writeLock.notifyAll();
+            }
+            if (thread != null) {
+                try {
+                    thread.join(flushTimeoutMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
 }
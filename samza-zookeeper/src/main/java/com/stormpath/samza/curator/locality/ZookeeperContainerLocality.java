@@ -0,0 +1,232 @@
+package com.stormpath.samza.curator.locality;
+
+import com.stormpath.samza.lang.Assert;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.samza.container.TaskName;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Remembers which container ids ran on which host and which tasks each container id had, so that a restarted
+ * process can claim the id it had before and get the same tasks - and reuse its local state stores instead of
+ * restoring them from the changelogs.
+ * <p>
+ * The ids last held by a host are stored (most recent first) in {@code <path>/hosts/<host>} and the host and task
+ * names of each id in {@code <path>/containers/<id>}.
+ */
+public class ZookeeperContainerLocality {
+
+    private static final Logger log = LoggerFactory.getLogger(ZookeeperContainerLocality.class);
+
+    private final CuratorFramework curator;
+    private final String path;
+    private final String host;
+
+    private int maxIdsPerHost = 16;
+
+    public ZookeeperContainerLocality(CuratorFramework curator, String path, String host) {
+        this.curator = Assert.notNull(curator, "CuratorFramework cannot be null.");
+        this.path = Assert.hasText(path, "path cannot be null or empty.");
+        this.host = Assert.hasText(host, "host cannot be null or empty.");
+        Assert.isTrue(host.indexOf('/') < 0 && host.indexOf('\n') < 0, "host cannot contain '/' or newlines.");
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getMaxIdsPerHost() {
+        return maxIdsPerHost;
+    }
+
+    public void setMaxIdsPerHost(int maxIdsPerHost) {
+        Assert.isTrue(maxIdsPerHost > 0, "maxIdsPerHost must be greater than zero.");
+        this.maxIdsPerHost = maxIdsPerHost;
+    }
+
+    protected String getHostPath() {
+        return ZKPaths.makePath(path, "hosts/" + host);
+    }
+
+    protected String getContainerPath(int id) {
+        return ZKPaths.makePath(path, "containers/" + id);
+    }
+
+    /**
+     * @return the ids previously held by processes on this host, most recent first
+     */
+    public List<Integer> getPreviousIds() {
+        try {
+            return parseIds(curator.getData().forPath(getHostPath()));
+        } catch (KeeperException.NoNodeException e) {
+            return Collections.emptyList();
+        } catch (Exception e) { //never fatal - the lowest free id is claimed instead
+            log.warn("Unable to read the previous container ids of host " + host + ": " + e.getMessage(), e);
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * @param id a container id
+     * @return the names of the tasks the container id had the last time it ran on this host (empty if it didn't)
+     */
+    public Set<String> getPreviousTasks(int id) {
+        try {
+            List<String> lines = split(curator.getData().forPath(getContainerPath(id)));
+            if (lines.isEmpty() || !host.equals(lines.get(0))) {
+                return Collections.emptySet();
+            }
+            return new TreeSet<>(lines.subList(1, lines.size()));
+        } catch (KeeperException.NoNodeException e) {
+            return Collections.emptySet();
+        } catch (Exception e) {
+            log.warn("Unable to read the previous tasks of container " + id + ": " + e.getMessage(), e);
+            return Collections.emptySet();
+        }
+    }
+
+    /**
+     * Records that the container with the specified id runs the specified tasks on this host.  Failures are only
+     * logged since the assignment works without them (it just may not be sticky on the next restart).
+     *
+     * @param id        the container id
+     * @param taskNames the container's tasks
+     */
+    public void recordAssignment(int id, Collection<TaskName> taskNames) {
+
+        Set<String> tasks = new TreeSet<>();
+        for (TaskName taskName : taskNames) {
+            tasks.add(taskName.getTaskName());
+        }
+
+        Set<String> previous = getPreviousTasks(id);
+        int kept = 0;
+        for (String task : tasks) {
+            if (previous.contains(task)) {
+                kept++;
+            }
+        }
+        log.info("Container {} on host {} has {} tasks, {} of which it had on this host before.", id, host,
+            tasks.size(), kept);
+
+        try {
+            recordId(id);
+
+            StringBuilder sb = new StringBuilder(host);
+            for (String task : tasks) {
+                sb.append('\n').append(task);
+            }
+            write(getContainerPath(id), sb.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            log.warn("Unable to record the tasks of container " + id + " on host " + host + ": " + e.getMessage(), e);
+        }
+    }
+
+    private void recordId(int id) throws Exception {
+        String hostPath = getHostPath();
+        //other processes on the same host may record their ids concurrently, so the ids are updated conditionally:
+        while (true) {
+            Stat stat = new Stat();
+            List<Integer> ids;
+            try {
+                ids = parseIds(curator.getData().storingStatIn(stat).forPath(hostPath));
+            } catch (KeeperException.NoNodeException e) {
+                try {
+                    curator.create().creatingParentsIfNeeded().forPath(hostPath, formatIds(Collections.singleton(id)));
+                    return;
+                } catch (KeeperException.NodeExistsException e2) {
+                    continue;
+                }
+            }
+
+            Set<Integer> updated = new LinkedHashSet<>();
+            updated.add(id);
+            updated.addAll(ids);
+            if (new ArrayList<>(updated).equals(ids)) {
+                return;
+            }
+
+            try {
+                curator.setData().withVersion(stat.getVersion()).forPath(hostPath, formatIds(updated));
+                return;
+            } catch (KeeperException.BadVersionException e) {
+                log.debug("Container ids of host {} changed concurrently, retrying", host);
+            }
+        }
+    }
+
+    private void write(String nodePath, byte[] bytes) throws Exception {
+        try {
+            curator.setData().forPath(nodePath, bytes);
+        } catch (KeeperException.NoNodeException e) {
+            try {
+                curator.create().creatingParentsIfNeeded().forPath(nodePath, bytes);
+            } catch (KeeperException.NodeExistsException e2) {
+                curator.setData().forPath(nodePath, bytes);
+            }
+        }
+    }
+
+    private byte[] formatIds(Collection<Integer> ids) {
+        StringBuilder sb = new StringBuilder();
+        int count = 0;
+        for (Integer id : ids) {
+            if (count++ == maxIdsPerHost) {
+                break;
+            }
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(id);
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<Integer> parseIds(byte[] bytes) {
+        List<Integer> ids = new ArrayList<>();
+        if (bytes == null) {
+            return ids;
+        }
+        for (String token : new String(bytes, StandardCharsets.UTF_8).split(",")) {
+            token = token.trim();
+            if (!token.isEmpty()) {
+                try {
+                    ids.add(Integer.parseInt(token));
+                } catch (NumberFormatException e) {
+                    log.debug("Ignoring invalid container id '{}'", token);
+                }
+            }
+        }
+        return ids;
+    }
+
+    private static List<String> split(byte[] bytes) {
+        if (bytes == null || bytes.length == 0) {
+            return Collections.emptyList();
+        }
+        List<String> lines = new ArrayList<>();
+        Collections.addAll(lines, new String(bytes, StandardCharsets.UTF_8).split("\n"));
+        return lines;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + path + ", host=" + host + "]";
+    }
+}
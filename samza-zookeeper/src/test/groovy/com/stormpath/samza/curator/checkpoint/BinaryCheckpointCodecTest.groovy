@@ -0,0 +1,42 @@
+package com.stormpath.samza.curator.checkpoint
+
+import org.apache.samza.Partition
+import org.apache.samza.checkpoint.Checkpoint
+import org.apache.samza.system.SystemStreamPartition
+import org.junit.Test
+
+import static org.junit.Assert.*
+
+class BinaryCheckpointCodecTest {
+
+    static Checkpoint checkpoint() {
+        def offsets = (0..<64).collectEntries {
+            [(new SystemStreamPartition('kafka', 'PageViewEvent', new Partition(it))): "${it * 1000}".toString()]
+        }
+        offsets[new SystemStreamPartition('kafka', 'changelog', new Partition(0))] = '007' //not a canonical number
+        offsets[new SystemStreamPartition('hdfs', 'events', new Partition(1))] = 'part-00001:1234'
+        new Checkpoint(offsets)
+    }
+
+    @Test
+    void testRoundTrip() {
+        def json = new JsonCheckpointCodec().encode(checkpoint())
+        [new BinaryCheckpointCodec(), new BinaryCheckpointCodec(true)].each { codec ->
+            byte[] bytes = codec.encode(checkpoint())
+            assertTrue BinaryCheckpointCodec.isBinary(bytes)
+            assertTrue "${bytes.length} bytes is not smaller than ${json.length} bytes of json",
+                bytes.length < json.length / 4
+            assertEquals checkpoint(), codec.decode(bytes)
+        }
+        //unlike json, null offsets survive the round trip:
+        def nullOffset = new Checkpoint([(new SystemStreamPartition('kafka', 'empty', new Partition(2))): null])
+        assertEquals nullOffset, new BinaryCheckpointCodec().decode(new BinaryCheckpointCodec().encode(nullOffset))
+    }
+
+    @Test
+    void testDecodesJson() {
+        def json = new JsonCheckpointCodec().encode(checkpoint())
+        assertFalse BinaryCheckpointCodec.isBinary(json)
+        assertEquals checkpoint(), new BinaryCheckpointCodec().decode(json)
+    }
+}
@@ -0,0 +1,202 @@
+package com.stormpath.samza.curator.checkpoint
+
+import org.apache.curator.framework.CuratorFramework
+import org.apache.curator.framework.CuratorFrameworkFactory
+import org.apache.curator.retry.RetryOneTime
+import org.apache.curator.test.TestingServer
+import org.apache.samza.Partition
+import org.apache.samza.SamzaException
+import org.apache.samza.checkpoint.Checkpoint
+import org.apache.samza.container.TaskName
+import org.apache.samza.serializers.CheckpointSerde
+import org.apache.samza.system.SystemStreamPartition
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+
+import static org.junit.Assert.*
+
+class ZookeeperCheckpointManagerTest {
+
+    TestingServer server
+    CuratorFramework curator
+
+    @Before
+    void setUp() {
+        server = new TestingServer()
+        curator = CuratorFrameworkFactory.newClient(server.connectString, new RetryOneTime(100))
+        curator.start()
+    }
+
+    @After
+    void tearDown() {
+        curator?.close()
+        server?.close()
+    }
+
+    static Checkpoint checkpoint(String offset) {
+        new Checkpoint([(new SystemStreamPartition('kafka', 'foo', new Partition(0))): offset])
+    }
+
+    @Test
+    void testWriteBehind() {
+
+        def tasks = (0..<3).collect { new TaskName("Partition $it") }
+
+        def manager = new ZookeeperCheckpointManager(curator, '/samza/jobs/test')
+        manager.writeBehind = true
+        tasks.each { manager.register(it) }
+        manager.start()
+
+        tasks.each { manager.writeCheckpoint(it, checkpoint('1')) }
+        tasks.each { manager.writeCheckpoint(it, checkpoint('2')) }
+        //pending checkpoints are visible before they are written:
+        assertEquals checkpoint('2'), manager.readLastCheckpoint(tasks[0])
+
+        manager.stop() //flushes
+
+        def serde = new CheckpointSerde()
+        tasks.each {
+            byte[] data = curator.data.forPath("/samza/jobs/test/tasks/${it.taskName}/checkpoint")
+            assertEquals checkpoint('2'), serde.fromBytes(data)
+        }
+        //every checkpoint was either written or replaced by a newer one before it was written:
+        def metrics = manager.metricsRegistry.getGroup(ZookeeperCheckpointManager.METRICS_GROUP)
+        assertEquals 6, metrics.get('checkpoints-written').count + metrics.get('checkpoints-coalesced').count
+
+        manager.close()
+    }
+
+    @Test
+    void testCheckpointsThatCannotBeWrittenDoNotHoldUpTheOthers() {
+
+        def tasks = (0..<4).collect { new TaskName("Partition $it") }
+
+        def manager = new ZookeeperCheckpointManager(curator, '/samza/jobs/test')
+        manager.writeBehind = true
+        manager.retryMillis = 10
+        tasks.each { manager.register(it) }
+        manager.start()
+
+        curator.delete().forPath("/samza/jobs/test/tasks/${tasks[1].taskName}/checkpoint")
+        def tooLarge = checkpoint('x' * Integer.getInteger('jute.maxbuffer', 0xfffff))
+
+        manager.writeCheckpoint(tasks[0], checkpoint('1'))
+        manager.writeCheckpoint(tasks[1], checkpoint('1')) //no node
+        manager.writeCheckpoint(tasks[2], tooLarge)
+        manager.writeCheckpoint(tasks[3], checkpoint('1'))
+
+        try {
+            manager.flush()
+            fail 'The discarded checkpoints should have been reported.'
+        } catch (SamzaException expected) {
+        }
+
+        def serde = new CheckpointSerde()
+        [tasks[0], tasks[3]].each {
+            byte[] data = curator.data.forPath("/samza/jobs/test/tasks/${it.taskName}/checkpoint")
+            assertEquals checkpoint('1'), serde.fromBytes(data)
+        }
+        def metrics = manager.metricsRegistry.getGroup(ZookeeperCheckpointManager.METRICS_GROUP)
+        assertEquals 2, metrics.get('checkpoints-discarded').count
+        assertEquals 2, metrics.get('checkpoints-written').count
+
+        //reported once, and later checkpoints are written as usual:
+        manager.writeCheckpoint(tasks[0], checkpoint('2'))
+        manager.flush()
+        assertEquals checkpoint('2'), manager.readLastCheckpoint(tasks[0])
+
+        manager.close()
+    }
+
+    @Test
+    void testCommitRoundIsSplitIntoTransactionsBelowMaxBytes() {
+
+        def tasks = (0..<10).collect { new TaskName("Partition $it") }
+
+        def manager = new ZookeeperCheckpointManager(curator, '/samza/jobs/test')
+        manager.maxTransactionBytes = 1000 //room for a few checkpoints per transaction
+        tasks.each { manager.register(it) }
+        manager.start()
+
+        manager.doWriteCheckpoints(tasks.collectEntries { [(it): checkpoint('1')] })
+
+        def serde = new CheckpointSerde()
+        tasks.each {
+            byte[] data = curator.data.forPath("/samza/jobs/test/tasks/${it.taskName}/checkpoint")
+            assertEquals checkpoint('1'), serde.fromBytes(data)
+        }
+        def transactions = manager.metricsRegistry.getGroup(ZookeeperCheckpointManager.METRICS_GROUP)
+            .get('checkpoint-transactions').count
+        assertTrue "expected several transactions but was $transactions", transactions > 1 && transactions < 10
+
+        manager.close()
+    }
+
+    @Test
+    void testCheckpointCacheIsKeptFresh() {
+
+        def tasks = (0..<3).collect { new TaskName("Partition $it") }
+        def serde = new CheckpointSerde()
+        tasks.each {
+            curator.create().creatingParentsIfNeeded()
+                .forPath("/samza/jobs/test/tasks/${it.taskName}/checkpoint", serde.toBytes(checkpoint('1')))
+        }
+
+        def manager = new ZookeeperCheckpointManager(curator, '/samza/jobs/test')
+        manager.register(tasks[0])
+        manager.start()
+
+        //only the registered tasks are loaded (and watched), not every task of the job:
+        assertEquals([(tasks[0]): checkpoint('1')], manager.cachedCheckpoints)
+        assertEquals checkpoint('1'), manager.readLastCheckpoint(tasks[0])
+
+        curator.setData()
+            .forPath("/samza/jobs/test/tasks/${tasks[0].taskName}/checkpoint", serde.toBytes(checkpoint('2')))
+        long deadline = System.currentTimeMillis() + 5000
+        while (manager.cachedCheckpoints[tasks[0]] != checkpoint('2') && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10)
+        }
+        assertEquals checkpoint('2'), manager.readLastCheckpoint(tasks[0])
+
+        manager.stop()
+        assertTrue manager.cachedCheckpoints.isEmpty()
+        manager.close()
+    }
+
+    @Test
+    void testChangeLogPartitionMappingRoundTrip() {
+
+        def mapping = (0..<25).collectEntries { [(new TaskName("Partition $it")): it] }
+
+        def manager = new ZookeeperCheckpointManager(curator, '/samza/jobs/test')
+        manager.maxConcurrentReads = 4
+        manager.start()
+        assertTrue manager.readChangeLogPartitionMapping().isEmpty()
+
+        manager.writeChangeLogPartitionMapping(mapping)
+        assertEquals mapping, manager.readChangeLogPartitionMapping()
+
+        manager.close()
+    }
+
+    @Test
+    void testUnchangedCheckpointsAreNotWritten() {
+
+        def task = new TaskName('Partition 0')
+        def manager = new ZookeeperCheckpointManager(curator, '/samza/jobs/test')
+        manager.register(task)
+        manager.start()
+
+        manager.writeCheckpoint(task, checkpoint('1'))
+        manager.writeCheckpoint(task, checkpoint('1')) //idle
+        manager.writeCheckpoint(task, checkpoint('2'))
+
+        def metrics = manager.metricsRegistry.getGroup(ZookeeperCheckpointManager.METRICS_GROUP)
+        assertEquals 2, metrics.get('checkpoints-written').count
+        assertEquals 1, metrics.get('checkpoints-skipped').count
+        assertEquals 2, curator.checkExists().forPath("/samza/jobs/test/tasks/${task.taskName}/checkpoint").version
+
+        manager.close()
+    }
+}
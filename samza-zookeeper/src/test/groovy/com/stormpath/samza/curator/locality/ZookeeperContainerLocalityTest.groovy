@@ -0,0 +1,55 @@
+package com.stormpath.samza.curator.locality
+
+import org.apache.curator.framework.CuratorFramework
+import org.apache.curator.framework.CuratorFrameworkFactory
+import org.apache.curator.retry.RetryOneTime
+import org.apache.curator.test.TestingServer
+import org.apache.samza.container.TaskName
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+
+import static org.junit.Assert.*
+
+class ZookeeperContainerLocalityTest {
+
+    static final String PATH = '/samza/jobs/test/locality'
+
+    TestingServer server
+    CuratorFramework curator
+
+    @Before
+    void setUp() {
+        server = new TestingServer()
+        curator = CuratorFrameworkFactory.newClient(server.connectString, new RetryOneTime(100))
+        curator.start()
+    }
+
+    @After
+    void tearDown() {
+        curator?.close()
+        server?.close()
+    }
+
+    @Test
+    void testAssignmentsAreRememberedPerHost() {
+
+        def host1 = new ZookeeperContainerLocality(curator, PATH, 'host1')
+        def host2 = new ZookeeperContainerLocality(curator, PATH, 'host2')
+        assertTrue host1.previousIds.isEmpty()
+
+        host1.recordAssignment(2, [new TaskName('Partition 2'), new TaskName('Partition 5')])
+        host1.recordAssignment(0, [new TaskName('Partition 0')])
+        host2.recordAssignment(1, [new TaskName('Partition 1')])
+
+        //most recent first:
+        assertEquals([0, 2], host1.previousIds)
+        assertEquals([1], host2.previousIds)
+        assertEquals(['Partition 2', 'Partition 5'] as Set, host1.getPreviousTasks(2))
+
+        //the id moved to another host, so its tasks' local stores aren't on host1 anymore:
+        host2.recordAssignment(2, [new TaskName('Partition 2')])
+        assertTrue host1.getPreviousTasks(2).isEmpty()
+        assertEquals(['Partition 2'] as Set, host2.getPreviousTasks(2))
+    }
+}